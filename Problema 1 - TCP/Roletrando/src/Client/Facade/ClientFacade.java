@@ -1,6 +1,9 @@
 package Client.Facade;
 
 import Client.Model.Client;
+import Client.Util.MoveResult;
+import Client.Util.RankingPage;
+import Client.Util.RoundState;
 import Server.Util.Engine.RankingItem;
 import java.io.IOException;
 import java.util.Iterator;
@@ -22,12 +25,12 @@ public class ClientFacade {
     /**
      * Set the user's name.
      *
-     * @param username
+     * @param username at most Protocol.MAX_USERNAME_LENGTH characters
+     * @return true if the server accepted the name, false otherwise.
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public void setUsername(String username) throws IOException, ClassNotFoundException {
-        this.client.setUsername(username);
+    public boolean setUsername(String username) throws IOException {
+        return this.client.setUsername(username);
     }
 
     public String getUsername() {
@@ -39,9 +42,8 @@ public class ClientFacade {
      *
      * @return the word
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public String getWord() throws IOException, ClassNotFoundException {
+    public String getWord() throws IOException {
         return this.client.getWord();
     }
 
@@ -50,9 +52,8 @@ public class ClientFacade {
      *
      * @return the tip if round >1, empty String otherwise.
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public String getTip() throws IOException, ClassNotFoundException {
+    public String getTip() throws IOException {
         return this.client.getTip();
     }
 
@@ -61,9 +62,8 @@ public class ClientFacade {
      *
      * @return the current roulette value.
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public int getRouletteValue() throws IOException, ClassNotFoundException {
+    public int getRouletteValue() throws IOException {
         return this.client.getRouletteValue();
     }
 
@@ -73,9 +73,8 @@ public class ClientFacade {
      * @param ch character to be tested
      * @return the amount of ch occurrences in the current word.
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public int tryCharacter(char ch) throws IOException, ClassNotFoundException {
+    public int tryCharacter(char ch) throws IOException {
         return this.client.tryCharacter(ch);
     }
 
@@ -85,9 +84,8 @@ public class ClientFacade {
      * @return true if there is more rounds, false if the current round is the
      * last one.
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public boolean hasNextRound() throws IOException, ClassNotFoundException {
+    public boolean hasNextRound() throws IOException {
         return this.client.hasNextRound();
     }
 
@@ -96,9 +94,8 @@ public class ClientFacade {
      *
      * @return true if the round changed, false otherwise.
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public boolean nextRound() throws IOException, ClassNotFoundException {
+    public boolean nextRound() throws IOException {
         return this.client.nextRound();
     }
 
@@ -107,9 +104,8 @@ public class ClientFacade {
      *
      * @return True if the round is ended, false if the round continues.
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public boolean isRoundFinished() throws IOException, ClassNotFoundException {
+    public boolean isRoundFinished() throws IOException {
         return this.client.isRoundFinished();
     }
 
@@ -118,9 +114,8 @@ public class ClientFacade {
      *
      * @return the current round user's score.
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public int getScore() throws IOException, ClassNotFoundException {
+    public int getScore() throws IOException {
         return this.client.getScore();
     }
 
@@ -129,9 +124,8 @@ public class ClientFacade {
      *
      * @return the current round number.
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public int getRoundNumber() throws IOException, ClassNotFoundException {
+    public int getRoundNumber() throws IOException {
         return this.client.getRoundNumber();
     }
 
@@ -140,9 +134,8 @@ public class ClientFacade {
      *
      * @return the user's highscore
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public int getHighscore() throws IOException, ClassNotFoundException {
+    public int getHighscore() throws IOException {
         return this.client.getHighscore();
     }
 
@@ -151,12 +144,44 @@ public class ClientFacade {
      *
      * @return the accumulated score
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public int getAccumulatedScore() throws IOException, ClassNotFoundException {
+    public int getAccumulatedScore() throws IOException {
         return this.client.getAccumulatedScore();
     }
 
+    /**
+     * Get the whole state of the current round in one request. Prefer it to
+     * the single getters when many values are shown together.
+     *
+     * @return the round state
+     * @throws IOException
+     */
+    public RoundState getRoundState() throws IOException {
+        return this.client.getRoundState();
+    }
+
+    /**
+     * Test a character and get the round state after it, in a single round
+     * trip.
+     *
+     * @param ch character to be tested
+     * @return the amount of revealed characters and the new round state.
+     * @throws IOException
+     */
+    public MoveResult tryCharacterAndGetState(char ch) throws IOException {
+        return this.client.tryCharacterAndGetState(ch);
+    }
+
+    /**
+     * Go to the next round and get its state, in a single round trip.
+     *
+     * @return the state of the next round.
+     * @throws IOException
+     */
+    public RoundState nextRoundAndGetState() throws IOException {
+        return this.client.nextRoundAndGetState();
+    }
+
     /**
      * Disconnects from the server.
      * @throws IOException 
@@ -170,10 +195,98 @@ public class ClientFacade {
      *
      * @return the iterator of the top3 list.
      * @throws IOException
-     * @throws ClassNotFoundException
      */
-    public Iterator<RankingItem> getTop3() throws IOException, ClassNotFoundException {
+    public Iterator<RankingItem> getTop3() throws IOException {
         return this.client.getTop3();
     }
 
+    /**
+     * Get the best players.
+     *
+     * @param amount of players
+     * @return the best players, from the first position.
+     * @throws IOException
+     */
+    public RankingPage getTop(int amount) throws IOException {
+        return this.client.getTop(amount);
+    }
+
+    /**
+     * Get a page of the ranking.
+     *
+     * @param offset amount of players skipped, the first position - 1
+     * @param limit maximum amount of players
+     * @return the players; fewer than limit if it's the last page.
+     * @throws IOException
+     */
+    public RankingPage getRankingPage(int offset, int limit) throws IOException {
+        return this.client.getRankingPage(offset, limit);
+    }
+
+    /**
+     * Get a page of a ranking window.
+     *
+     * @param window Protocol.WINDOW_ALL_TIME, WINDOW_DAILY or WINDOW_WEEKLY
+     * @param offset amount of players skipped, the first position - 1
+     * @param limit maximum amount of players
+     * @return the players; fewer than limit if it's the last page.
+     * @throws IOException
+     */
+    public RankingPage getWindowRanking(int window, int offset, int limit) throws IOException {
+        return this.client.getWindowRanking(window, offset, limit);
+    }
+
+    /**
+     * Get the user's position in a ranking window.
+     *
+     * @param window Protocol.WINDOW_ALL_TIME, WINDOW_DAILY or WINDOW_WEEKLY
+     * @return the position, starting at 1, or 0 if the user isn't ranked.
+     * @throws IOException
+     */
+    public int getWindowPosition(int window) throws IOException {
+        return this.client.getWindowPosition(window);
+    }
+
+    /**
+     * Get how many ranked players have a lower highscore than the user.
+     *
+     * @return the percentage, from 0 to 100.
+     * @throws IOException
+     */
+    public double getRankingPercentile() throws IOException {
+        return this.client.getRankingPercentile();
+    }
+
+    /**
+     * Get the score needed to be above a percentage of the ranked players.
+     *
+     * @param percentile from 0 to 100
+     * @return the score, or 0 if no player is ranked.
+     * @throws IOException
+     */
+    public int getScoreAtPercentile(double percentile) throws IOException {
+        return this.client.getScoreAtPercentile(percentile);
+    }
+
+    /**
+     * Get the user's position in the ranking.
+     *
+     * @return the position, starting at 1, or 0 if the user isn't ranked.
+     * @throws IOException
+     */
+    public int getRankingPosition() throws IOException {
+        return this.client.getRankingPosition();
+    }
+
+    /**
+     * Get the players around the user in the ranking.
+     *
+     * @param radius amount of players before and after the user
+     * @return the players, the user included.
+     * @throws IOException
+     */
+    public RankingPage getPlayersAround(int radius) throws IOException {
+        return this.client.getPlayersAround(radius);
+    }
+
 }
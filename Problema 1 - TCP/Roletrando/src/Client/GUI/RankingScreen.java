@@ -6,10 +6,15 @@
 package Client.GUI;
 
 import Client.Facade.ClientFacade;
+import Client.Util.RankingPage;
 import Server.Util.Engine.RankingItem;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.io.IOException;
-import java.util.Iterator;
 import javax.swing.DefaultListModel;
+import javax.swing.JScrollBar;
 
 /**
  *
@@ -17,36 +22,86 @@ import javax.swing.DefaultListModel;
  */
 public class RankingScreen extends javax.swing.JFrame {
 
+    private static final int PAGE_SIZE = 20; //Players fetched at a time.
+
     ClientFacade client;
     RegistrationScreen registro;
+    private final DefaultListModel lista; //Players fetched so far.
+    private boolean lastPage; //True if every player was fetched.
 
-    public RankingScreen(RegistrationScreen registro) throws IOException, ClassNotFoundException {
+    public RankingScreen(RegistrationScreen registro) throws IOException {
         this.client = new ClientFacade(registro.getIp(), registro.getPorta());
         this.registro = registro;
+        this.lista = new DefaultListModel();
         initComponents();
         this.setVisible(true);
         addItem();
     }
 
-    public RankingScreen(RegistrationScreen registro, ClientFacade client) throws IOException, ClassNotFoundException {
+    public RankingScreen(RegistrationScreen registro, ClientFacade client) throws IOException {
         this.client = client;
         this.registro = registro;
+        this.lista = new DefaultListModel();
         initComponents();
         this.setVisible(false);
         addItem();
     }
 
-    private void addItem() throws IOException, ClassNotFoundException {
-        DefaultListModel lista = new DefaultListModel();
-        Iterator jogador = client.getTop3();
-        int i = 0;
-        while (jogador.hasNext()) {
-            RankingItem item = (RankingItem) jogador.next();
-            lista.addElement("Jogador: " + item.getUsername() + "; Pontuação: " + item.getScore());
+    /**
+     * Shows the first pages of the ranking, as many as fill the list. The next
+     * pages are fetched when the list is scrolled to its end, or when it's
+     * resized taller than its rows.
+     */
+    private void addItem() throws IOException {
+        jList1.setModel(lista);
+        addPage();
+        fillView();
+        jScrollPane1.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+            @Override
+            public void adjustmentValueChanged(AdjustmentEvent evt) {
+                JScrollBar barra = (JScrollBar) evt.getAdjustable();
+                if (!evt.getValueIsAdjusting() && !lastPage
+                        && barra.getValue() + barra.getVisibleAmount() >= barra.getMaximum()) {
+                    try {
+                        addPage();
+                    } catch (IOException ex) {
+                        System.err.println("ERROR: " + ex);
+                    }
+                }
+            }
+        });
+        jScrollPane1.getViewport().addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent evt) {
+                try {
+                    fillView();
+                } catch (IOException ex) {
+                    System.err.println("ERROR: " + ex);
+                }
+            }
+        });
+    }
 
+    /**
+     * Fetches pages until the list is taller than its view, so it can be
+     * scrolled: a list without a scroll bar never asks for the next page.
+     */
+    private void fillView() throws IOException {
+        while (!lastPage && jList1.getPreferredSize().height <= jScrollPane1.getViewport().getExtentSize().height) {
+            addPage();
         }
-        jList1.setModel(lista);
+    }
 
+    /**
+     * Fetches the next page of the ranking.
+     */
+    private void addPage() throws IOException {
+        RankingPage pagina = client.getRankingPage(lista.size(), PAGE_SIZE);
+        int posicao = pagina.getFirstPosition();
+        for (RankingItem item : pagina) {
+            lista.addElement(posicao++ + ". Jogador: " + item.getUsername() + "; Pontuação: " + item.getScore());
+        }
+        lastPage = pagina.size() < PAGE_SIZE;
     }
 
     /**
@@ -6,6 +6,7 @@
 package Client.GUI;
 
 import Client.Facade.ClientFacade;
+import Client.Util.Protocol.Protocol;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -122,14 +123,19 @@ public class RegistrationScreen extends javax.swing.JFrame {
     private void jButton1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton1ActionPerformed
         try {
             ClientFacade client = new ClientFacade(getIp(), getPorta());
-            client.setUsername(this.campoNome.getText());
+            if (!client.setUsername(this.campoNome.getText())) {
+                JOptionPane.showMessageDialog(this, "Nome inválido: use até "
+                        + Protocol.MAX_USERNAME_LENGTH + " caracteres.");
+                client.disconnect();
+                return;
+            }
             JOptionPane.showMessageDialog(this,"O Cliente se conectou com o nome: \n                    "
                     +this.campoNome.getText().toUpperCase());
             this.setVisible(false);
             RankingScreen ranking = new RankingScreen(this, client);
             ranking.setVisible(false);
             ScreenGameMode gameMode = new ScreenGameMode(client,campoNome.getText().toUpperCase(), ranking);
-        } catch (IOException | ClassNotFoundException ex) {
+        } catch (IOException ex) {
             Logger.getLogger(RegistrationScreen.class.getName()).log(Level.SEVERE, null, ex);
         }
     }//GEN-LAST:event_jButton1ActionPerformed
@@ -140,8 +146,6 @@ public class RegistrationScreen extends javax.swing.JFrame {
             RankingScreen ranking = new RankingScreen(this);
         } catch (IOException ex) {
             Logger.getLogger(RegistrationScreen.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (ClassNotFoundException ex) {
-            Logger.getLogger(RegistrationScreen.class.getName()).log(Level.SEVERE, null, ex);
         }
     }//GEN-LAST:event_jButton2ActionPerformed
 
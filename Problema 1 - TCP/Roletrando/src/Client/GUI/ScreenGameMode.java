@@ -6,6 +6,8 @@
 package Client.GUI;
 
 import Client.Facade.ClientFacade;
+import Client.Util.MoveResult;
+import Client.Util.RoundState;
 import Server.Util.Engine.Ranking;
 import java.io.IOException;
 import java.util.logging.Level;
@@ -24,36 +26,37 @@ public class ScreenGameMode extends javax.swing.JFrame {
      */
     private ClientFacade client;
     private RankingScreen rank;
+    private int roulette; //Value of each character in the current turn.
     
     
-    public ScreenGameMode(ClientFacade client, String name, RankingScreen rank) throws IOException, ClassNotFoundException {
+    public ScreenGameMode(ClientFacade client, String name, RankingScreen rank) throws IOException {
         initComponents();
         this.client = client;
         this.rank = rank;
         this.setVisible(true);
          this.jLabel1.setText("Username: " + name);
-        gameMode();
+        gameMode(client.getRoundState());
     }
     
    
-    private void gameMode() throws IOException, ClassNotFoundException{
-        if (client.hasNextRound()) {
-            rodada.setText(client.getRoundNumber() + "ª rodada");
-            if (client.isRoundFinished()) {
-                client.nextRound();
+    private void gameMode(RoundState state) throws IOException{
+        if (state.hasNextRound()) {
+            rodada.setText(state.getRoundNumber() + "ª rodada");
+            if (state.isRoundFinished()) {
+                state = client.nextRoundAndGetState();
                 carregarBotao();
             }
-            if (!client.isRoundFinished()) {
-                jLabelPalavra.setText("                                                     " + client.getWord());
-                jLabelDica.setText("Dica: " + client.getTip());
-                int roulette = client.getRouletteValue();
+            if (!state.isRoundFinished()) {
+                jLabelPalavra.setText("                                                     " + state.getWord());
+                jLabelDica.setText("Dica: " + state.getTip());
+                roulette = client.getRouletteValue();
                 while(roulette==0){
                     JOptionPane.showMessageDialog(this, "Perdeu tudo" );
                     roulette = client.getRouletteValue();
                 }
                 jLabelValor.setText("Cada letra vale: " + roulette);
-                Acumulado.setText("Valor Acumulado = " + client.getAccumulatedScore());
-                ranking.setText("Ranking: " + client.getHighscore());
+                Acumulado.setText("Valor Acumulado = " + state.getAccumulatedScore());
+                ranking.setText("Ranking: " + state.getHighscore());
                 
             }
         }
@@ -65,11 +68,12 @@ public class ScreenGameMode extends javax.swing.JFrame {
         
         public void pegarLetra(JButton button){
         try {
-            int revealCharacters = client.tryCharacter(button.getText().toUpperCase().charAt(0));
+            MoveResult move = client.tryCharacterAndGetState(button.getText().toUpperCase().charAt(0));
+            int revealCharacters = move.getRevealedCharacters();
             button.setEnabled(false);
-            jLabelGanho.setText("Acertou " + revealCharacters + " letras  e " + "Ganhou " + (revealCharacters * client.getRouletteValue()));
-            this.gameMode();
-        } catch (IOException | ClassNotFoundException ex) {
+            jLabelGanho.setText("Acertou " + revealCharacters + " letras  e " + "Ganhou " + (revealCharacters * roulette));
+            this.gameMode(move.getState());
+        } catch (IOException ex) {
             Logger.getLogger(ScreenGameMode.class.getName()).log(Level.SEVERE, null, ex);
         }
         }
@@ -1,22 +1,32 @@
 package Client.Model;
 
 import Server.Util.Engine.RankingItem;
+import Client.Util.MoveResult;
 import Client.Util.Protocol.Protocol;
+import Client.Util.RankingPage;
+import Client.Util.RoundState;
+import Server.Util.Protocol.FrameReader;
+import Server.Util.Protocol.FrameWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
-import java.util.StringTokenizer;
 
 /**
  * Client-side implementation of "Roda-a-Roda" game. This class is responsable
  * to give an abstraction layer between the client's choice and the corresponding 
- * request to the server. A request to the serve is represented by a message
- * established on the Protocol class.
+ * request to the server. A request to the serve is represented by a binary
+ * frame whose operation code is established on the Protocol class.
+ * Requests can be pipelined: many requests are sent (see send) before the
+ * first answer is read, and each answer is matched to its request by id.
+ * After a round state is loaded, the round's fields are answered by a local
+ * mirror kept up to date by the deltas the server pushes after each move.
  * 
  * @see Protocol
  * @author Allen Hichard
@@ -24,14 +34,20 @@ import java.util.StringTokenizer;
  */
 public class Client {
 
-    private final ObjectInputStream input; //Client's input stream
-    private final ObjectOutputStream output; //Client's output stream
+    private final FrameReader input; //Client's input stream
+    private final FrameWriter output; //Client's output stream
     private String username; //Client's username
+    private final Deque<Reply> pending; //Requests not answered yet, in order.
+    private Reply current; //Reply being read straight from the input.
+    private int lastRequestId;
+    private final RoundMirror mirror; //Local copy of the current round.
 
     public Client(String address, int port) throws IOException {
         Socket socket = new Socket(address, port);
-        this.input = new ObjectInputStream(socket.getInputStream());
-        this.output = new ObjectOutputStream(socket.getOutputStream());
+        this.input = new FrameReader(new BufferedInputStream(socket.getInputStream()));
+        this.output = new FrameWriter(new BufferedOutputStream(socket.getOutputStream()));
+        this.pending = new ArrayDeque<>();
+        this.mirror = new RoundMirror();
     }
 
     public String getUsername() {
@@ -41,13 +57,17 @@ public class Client {
     /**
      * Set the user's name.
      * 
-     * @param username
+     * @param username at most Protocol.MAX_USERNAME_LENGTH characters
+     * @return true if the server accepted the name, false otherwise.
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public void setUsername(String username) throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.SEND_USER_NAME);
-        this.sendMessage(username);
+    public boolean setUsername(String username) throws IOException {
+        this.output.begin(Protocol.SEND_USER_NAME, ++this.lastRequestId).putString(username).end();
+        boolean accepted = this.expect(Protocol.SEND_USER_NAME).getBoolean();
+        if (accepted) {
+            this.username = username;
+        }
+        return accepted;
     }
     
     /**
@@ -55,22 +75,24 @@ public class Client {
      * 
      * @return the word
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public String getWord() throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.GET_WORD);
-        return this.readMessage().toString();
+    public String getWord() throws IOException {
+        if (this.isMirrored()) {
+            return this.mirror.getWord();
+        }
+        return this.send(Protocol.GET_WORD).getString();
     }
     
     /**
      * Get the tip of the current word.
      * @return the tip if round >1, empty String otherwise.
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public String getTip() throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.GET_TIP);
-        return this.readMessage().toString();
+    public String getTip() throws IOException {
+        if (this.isMirrored()) {
+            return this.mirror.getTip();
+        }
+        return this.send(Protocol.GET_TIP).getString();
     }
 
     /**
@@ -78,11 +100,9 @@ public class Client {
      * 
      * @return the current roulette value.
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public int getRouletteValue() throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.GET_ROULETTE_VALUE);
-        return Integer.parseInt(this.readMessage().toString());
+    public int getRouletteValue() throws IOException {
+        return this.send(Protocol.GET_ROULETTE_VALUE).getInt();
     }
     
     /**
@@ -90,34 +110,33 @@ public class Client {
      * @param ch character to be tested
      * @return the amount of ch occurrences in the current word.
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public int tryCharacter(char ch) throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.TRY_CHARACTER);
-        this.sendMessage(ch);
-        return Integer.parseInt(this.readMessage().toString());
+    public int tryCharacter(char ch) throws IOException {
+        return this.sendTryCharacter(ch).getInt();
     }
 
     /**
      * Check if the current round is finished.
      * @return True if the round is ended, false if the round continues.
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public boolean isRoundFinished() throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.IS_ROUND_FINISHED);
-        return Boolean.parseBoolean(this.readMessage().toString());
+    public boolean isRoundFinished() throws IOException {
+        if (this.isMirrored()) {
+            return this.mirror.isRoundFinished();
+        }
+        return this.send(Protocol.IS_ROUND_FINISHED).getBoolean();
     }
     
     /**
      * Get the user's current round score.
      * @return the current round user's score.
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public int getScore() throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.GET_CURRENT_SCORE);
-        return Integer.parseInt(this.readMessage().toString());
+    public int getScore() throws IOException {
+        if (this.isMirrored()) {
+            return this.mirror.getScore();
+        }
+        return this.send(Protocol.GET_CURRENT_SCORE).getInt();
     }
     
     /**
@@ -125,22 +144,24 @@ public class Client {
      * 
      * @return the user's highscore
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public int getHighscore() throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.GET_USER_HIGH_SCORE);
-        return Integer.parseInt(this.readMessage().toString());
+    public int getHighscore() throws IOException {
+        if (this.isMirrored()) {
+            return this.mirror.getHighscore();
+        }
+        return this.send(Protocol.GET_USER_HIGH_SCORE).getInt();
     }
 
     /**
      * Get the current round number.
      * @return the current round number.
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public int getRoundNumber() throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.GET_ROUND_NUMBER);
-        return Integer.parseInt(this.readMessage().toString());
+    public int getRoundNumber() throws IOException {
+        if (this.isMirrored()) {
+            return this.mirror.getRoundNumber();
+        }
+        return this.send(Protocol.GET_ROUND_NUMBER).getInt();
     }
     
     /**
@@ -149,11 +170,12 @@ public class Client {
      * @return true if there is more rounds, false if the current round is the 
      * last one.
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public boolean hasNextRound() throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.HAS_NEXT_ROUND);
-        return Boolean.parseBoolean(this.readMessage().toString());
+    public boolean hasNextRound() throws IOException {
+        if (this.isMirrored()) {
+            return this.mirror.hasNextRound();
+        }
+        return this.send(Protocol.HAS_NEXT_ROUND).getBoolean();
     }
 
     /**
@@ -161,61 +183,296 @@ public class Client {
      * 
      * @return true if the round changed, false otherwise.
      * @throws IOException 
-     * @throws ClassNotFoundException 
      */
-    public boolean nextRound() throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.NEXT_ROUND);
-        return Boolean.parseBoolean(this.readMessage().toString());
+    public boolean nextRound() throws IOException {
+        return this.send(Protocol.NEXT_ROUND).getBoolean();
     }
     
     /**
      * Get user's the accumulated score in the current game.
      * @return the accumulated score
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public int getAccumulatedScore() throws IOException, ClassNotFoundException{
-        this.sendMessage(Protocol.ACCUMULATED_SCORE);
-        return Integer.parseInt(this.readMessage().toString());
+    public int getAccumulatedScore() throws IOException{
+        if (this.isMirrored()) {
+            return this.mirror.getAccumulatedScore();
+        }
+        return this.send(Protocol.ACCUMULATED_SCORE).getInt();
+    }
+
+    /**
+     * Get the whole state of the current round in one request.
+     * @return the round state
+     * @throws IOException
+     */
+    public RoundState getRoundState() throws IOException {
+        if (this.isMirrored()) {
+            return this.mirror.toRoundState();
+        }
+        return Client.readRoundState(this.send(Protocol.GET_ROUND_STATE));
+    }
+
+    /**
+     * Test a character and get the round state after it. The state comes from
+     * the mirror, updated by the delta pushed with the answer, so it takes a
+     * single small request.
+     * @param ch character to be tested
+     * @return the amount of revealed characters and the new round state.
+     * @throws IOException
+     */
+    public MoveResult tryCharacterAndGetState(char ch) throws IOException {
+        int revealed = this.tryCharacter(ch);
+        return new MoveResult(revealed, this.getRoundState());
+    }
+
+    /**
+     * Go to the next round and get its state, in a single round trip.
+     * @return the state of the next round.
+     * @throws IOException
+     */
+    public RoundState nextRoundAndGetState() throws IOException {
+        Reply nextRound = this.send(Protocol.NEXT_ROUND);
+        Reply state = this.send(Protocol.GET_ROUND_STATE);
+        nextRound.getBoolean();
+        return Client.readRoundState(state);
+    }
+
+    private static RoundState readRoundState(Reply state) throws IOException {
+        return new RoundState(state.getBoolean(), state.getInt(), state.getBoolean(), state.getString(),
+                state.getString(), state.getInt(), state.getInt(), state.getInt(), state.getInt());
     }
 
     /**
      * Get the top 3 best players.
      * @return the iterator of the top3 list.
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public Iterator<RankingItem> getTop3() throws IOException, ClassNotFoundException {
-        this.sendMessage(Protocol.RANKING_TOP3);
-        List<RankingItem> top3 = new ArrayList<>();
-        StringTokenizer rankingInfo = new StringTokenizer(this.readMessage().toString(), Protocol.SEPARATOR);
-        while(rankingInfo.hasMoreTokens()){
-            top3.add(new RankingItem(rankingInfo.nextToken(), Integer.parseInt(rankingInfo.nextToken())));
+    public Iterator<RankingItem> getTop3() throws IOException {
+        Reply rankingInfo = this.send(Protocol.RANKING_TOP3);
+        int size = rankingInfo.getInt();
+        List<RankingItem> top3 = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            top3.add(new RankingItem(rankingInfo.getString(), rankingInfo.getInt()));
         }
         return top3.iterator();
     }
     
     /**
-     * Reads a message from de server.
-     * 
-     * @return the read message.
+     * Get the best players.
+     * @param amount of players
+     * @return the best players, from the first position.
+     * @throws IOException
+     */
+    public RankingPage getTop(int amount) throws IOException {
+        return Client.readRankingPage(this.send(Protocol.RANKING_TOP, amount));
+    }
+
+    /**
+     * Get the user's position in the ranking.
+     * @return the position, starting at 1, or 0 if the user isn't ranked.
+     * @throws IOException
+     */
+    public int getRankingPosition() throws IOException {
+        Reply position = this.send(Protocol.RANKING_POSITION);
+        int userPosition = position.getInt();
+        position.getInt(); //Amount of ranked players
+        return userPosition;
+    }
+
+    /**
+     * Get the players around the user in the ranking.
+     * @param radius amount of players before and after the user
+     * @return the players, the user included; empty if the user isn't ranked.
+     * @throws IOException
+     */
+    public RankingPage getPlayersAround(int radius) throws IOException {
+        return Client.readRankingPage(this.send(Protocol.RANKING_AROUND, radius));
+    }
+
+    /**
+     * Get a page of the ranking.
+     * @param offset amount of players skipped, the first position - 1
+     * @param limit maximum amount of players
+     * @return the players; fewer than limit if it's the last page.
+     * @throws IOException
+     */
+    public RankingPage getRankingPage(int offset, int limit) throws IOException {
+        this.output.begin(Protocol.RANKING_PAGE, ++this.lastRequestId).putInt(offset).putInt(limit).end();
+        return Client.readRankingPage(this.expect(Protocol.RANKING_PAGE));
+    }
+
+    /**
+     * Get a page of a ranking window.
+     * @param window Protocol.WINDOW_ALL_TIME, WINDOW_DAILY or WINDOW_WEEKLY
+     * @param offset amount of players skipped, the first position - 1
+     * @param limit maximum amount of players
+     * @return the players; fewer than limit if it's the last page.
+     * @throws IOException
+     */
+    public RankingPage getWindowRanking(int window, int offset, int limit) throws IOException {
+        this.output.begin(Protocol.RANKING_WINDOW, ++this.lastRequestId)
+                .putInt(window).putInt(offset).putInt(limit).end();
+        return Client.readRankingPage(this.expect(Protocol.RANKING_WINDOW));
+    }
+
+    /**
+     * Get the user's position in a ranking window.
+     * @param window Protocol.WINDOW_ALL_TIME, WINDOW_DAILY or WINDOW_WEEKLY
+     * @return the position, starting at 1, or 0 if the user isn't ranked.
      * @throws IOException
-     * @throws ClassNotFoundException 
      */
-    public Object readMessage() throws IOException, ClassNotFoundException {
-        return this.input.readObject();
+    public int getWindowPosition(int window) throws IOException {
+        return this.send(Protocol.RANKING_WINDOW_POSITION, window).getInt();
     }
 
     /**
-     * Send a message to the server.
+     * Get how many ranked players have a lower highscore than the user. It's
+     * estimated by the server from a histogram of the highscores.
+     * @return the percentage, from 0 to 100.
+     * @throws IOException
+     */
+    public double getRankingPercentile() throws IOException {
+        return this.send(Protocol.RANKING_PERCENTILE).getInt() / 100.0;
+    }
+
+    /**
+     * Get the score needed to be above a percentage of the ranked players. It's
+     * estimated by the server from a histogram of the highscores.
+     * @param percentile from 0 to 100
+     * @return the score, or 0 if no player is ranked.
+     * @throws IOException
+     */
+    public int getScoreAtPercentile(double percentile) throws IOException {
+        return this.send(Protocol.RANKING_SCORE_AT_PERCENTILE, (int) Math.round(percentile * 100)).getInt();
+    }
+
+    private static RankingPage readRankingPage(Reply ranking) throws IOException {
+        int firstPosition = ranking.getInt();
+        int size = ranking.getInt();
+        List<RankingItem> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(new RankingItem(ranking.getString(), ranking.getInt()));
+        }
+        return new RankingPage(firstPosition, users);
+    }
+
+    /**
+     * Sends a request without arguments. The request is written but only
+     * flushed when an answer is awaited, so many requests travel together.
      * 
-     * @param message message to be sent.
+     * @param opcode request, given in the Protocol class
+     * @return the reply, read its fields to wait for the answer.
      * @throws IOException 
      */
-    public void sendMessage(Object message) throws IOException {
-        this.output.reset();
-        this.output.writeObject(message);
+    public Reply send(int opcode) throws IOException {
+        this.output.begin(opcode, ++this.lastRequestId).end();
+        return this.expect(opcode);
+    }
+
+    /**
+     * Sends a request with an int argument, without waiting for the answer.
+     * 
+     * @param opcode request, given in the Protocol class
+     * @param argument of the request
+     * @return the reply, read its fields to wait for the answer.
+     * @throws IOException 
+     */
+    public Reply send(int opcode, int argument) throws IOException {
+        this.output.begin(opcode, ++this.lastRequestId).putInt(argument).end();
+        return this.expect(opcode);
+    }
+
+    /**
+     * Sends a TRY_CHARACTER request, without waiting for the answer.
+     * 
+     * @param ch character to be tested
+     * @return the reply, the amount of ch occurrences in the current word.
+     * @throws IOException 
+     */
+    public Reply sendTryCharacter(char ch) throws IOException {
+        this.output.begin(Protocol.TRY_CHARACTER, ++this.lastRequestId).putChar(ch).end();
+        return this.expect(Protocol.TRY_CHARACTER);
+    }
+
+    private Reply expect(int opcode) {
+        Reply reply = new Reply(this, this.lastRequestId, opcode);
+        this.pending.add(reply);
+        return reply;
+    }
+
+    /**
+     * Reads answers until the reply's answer arrives. The server answers in
+     * the order of the requests, the earlier answers are kept by their
+     * replies. Frames pushed by the server are applied to the mirror.
+     * 
+     * @param reply waiting for its answer
+     * @throws IOException if an answer doesn't match its request
+     */
+    void await(Reply reply) throws IOException {
         this.output.flush();
+        Reply next = null;
+        while (next != reply) {
+            if (this.current != null && this.input.hasRemaining()) { //Unread fields would be overwritten
+                this.current.receive(this.input.detach());
+            }
+            this.current = null;
+            int opcode = this.input.next();
+            if (this.input.getRequestId() == Protocol.PUSH_ID) {
+                this.observe(opcode);
+                continue;
+            }
+            next = this.pending.poll();
+            if (next == null) {
+                throw new IOException("Request " + reply.getRequestId() + " isn't waiting for an answer");
+            }
+            if (this.input.getRequestId() != next.getRequestId() || opcode != next.getOpcode()) {
+                throw new IOException("Expected the answer of request " + next.getRequestId()
+                        + ", got request " + this.input.getRequestId());
+            }
+            this.observe(opcode);
+            this.input.rewind();
+            next.receive(this.input);
+            this.current = next;
+        }
+    }
+
+    /**
+     * Updates the mirror with a frame that changes the round.
+     * 
+     * @param opcode of the frame just read
+     * @throws IOException 
+     */
+    private void observe(int opcode) throws IOException {
+        switch (opcode) {
+            case Protocol.GET_ROUND_STATE:
+                this.mirror.load(this.input);
+                break;
+            case Protocol.STATE_DELTA:
+                this.mirror.apply(this.input);
+                break;
+            case Protocol.GET_ROULETTE_VALUE:
+                this.mirror.setRouletteValue(this.input.getInt());
+                break;
+            case Protocol.NEXT_ROUND:
+                if (this.input.getBoolean()) {
+                    this.mirror.invalidate();
+                }
+                break;
+        }
+    }
+
+    /**
+     * Checks if the round's fields can be answered by the mirror. The answers
+     * on their way are read first, so the mirror is up to date.
+     * 
+     * @return true if the mirror has the current round.
+     * @throws IOException 
+     */
+    private boolean isMirrored() throws IOException {
+        if (!this.pending.isEmpty()) {
+            this.await(this.pending.peekLast());
+        }
+        return this.mirror.isValid();
     }
     
     /**
@@ -223,12 +480,12 @@ public class Client {
      * @throws IOException 
      */
     public void disconnect() throws IOException{
-        this.sendMessage(Protocol.GAME_OVER);
+        this.output.begin(Protocol.GAME_OVER, ++this.lastRequestId).send();
         this.input.close();
         this.output.close();
     }
 
-    public static void main(String[] args) throws IOException, ClassNotFoundException {
+    public static void main(String[] args) throws IOException {
         Client client = new Client("localhost", 12345);
        Iterator<RankingItem> top3 = client.getTop3();
        int i=1;
@@ -238,7 +495,11 @@ public class Client {
         }
         Scanner read = new Scanner(System.in);
         System.out.print("Nome: ");
-        client.setUsername(read.nextLine());
+        if (!client.setUsername(read.nextLine())) {
+            System.out.println("Nome inválido: use até " + Protocol.MAX_USERNAME_LENGTH + " caracteres.");
+            client.disconnect();
+            return;
+        }
 
         while (client.hasNextRound()) {
             client.disconnect();
@@ -0,0 +1,63 @@
+package Client.Model;
+
+import Server.Util.Protocol.FrameReader;
+import java.io.IOException;
+
+/**
+ * Answer of a request sent to the server. The request may still be on its way:
+ * reading a field waits for the answer. Fields are read in the order the
+ * server wrote them.
+ *
+ * @see Client#send(int)
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+public class Reply {
+
+    private final Client client;
+    private final int requestId;
+    private final int opcode;
+    private FrameReader answer; //Null until the answer arrives.
+
+    Reply(Client client, int requestId, int opcode) {
+        this.client = client;
+        this.requestId = requestId;
+        this.opcode = opcode;
+    }
+
+    int getRequestId() {
+        return requestId;
+    }
+
+    int getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Called by the client when the answer arrives.
+     *
+     * @param answer the answer's frame
+     */
+    void receive(FrameReader answer) {
+        this.answer = answer;
+    }
+
+    private FrameReader answer() throws IOException {
+        if (this.answer == null) {
+            this.client.await(this);
+        }
+        return this.answer;
+    }
+
+    public int getInt() throws IOException {
+        return this.answer().getInt();
+    }
+
+    public boolean getBoolean() throws IOException {
+        return this.answer().getBoolean();
+    }
+
+    public String getString() throws IOException {
+        return this.answer().getString();
+    }
+}
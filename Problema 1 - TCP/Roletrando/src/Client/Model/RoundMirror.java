@@ -0,0 +1,119 @@
+package Client.Model;
+
+import Client.Util.RoundState;
+import Server.Util.Protocol.FrameReader;
+import java.io.IOException;
+
+/**
+ * Client's copy of the current round. It's loaded from a round state and kept
+ * up to date by the deltas the server pushes after each move, so the client
+ * doesn't ask again for fields that didn't change.
+ *
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class RoundMirror {
+
+    private boolean valid; //False until a round state is loaded.
+    private boolean nextRound;
+    private int roundNumber;
+    private boolean roundFinished;
+    private char[] word; //User's version of the word.
+    private String tip;
+    private int rouletteValue;
+    private int score;
+    private int accumulatedScore;
+    private int highscore;
+
+    /**
+     * Loads a whole round state frame.
+     *
+     * @param state frame with the round state fields
+     * @throws IOException
+     */
+    void load(FrameReader state) throws IOException {
+        this.nextRound = state.getBoolean();
+        this.roundNumber = state.getInt();
+        this.roundFinished = state.getBoolean();
+        this.word = state.getString().toCharArray();
+        this.tip = state.getString();
+        this.rouletteValue = state.getInt();
+        this.score = state.getInt();
+        this.accumulatedScore = state.getInt();
+        this.highscore = state.getInt();
+        this.valid = true;
+    }
+
+    /**
+     * Applies a delta pushed by the server: the revealed positions, the score
+     * change, the roulette value and the round finished flag.
+     *
+     * @param delta STATE_DELTA frame
+     * @throws IOException
+     */
+    void apply(FrameReader delta) throws IOException {
+        char ch = delta.getChar();
+        int revealed = delta.getChar();
+        for (int i = 0; i < revealed; i++) {
+            int position = delta.getChar();
+            if (this.valid && position < this.word.length) {
+                this.word[position] = ch;
+            }
+        }
+        this.score += delta.getInt();
+        this.rouletteValue = delta.getInt();
+        this.roundFinished = delta.getBoolean();
+    }
+
+    /**
+     * Forgets the round, after the server changed it (e.g. next round).
+     */
+    void invalidate() {
+        this.valid = false;
+    }
+
+    boolean isValid() {
+        return this.valid;
+    }
+
+    void setRouletteValue(int rouletteValue) {
+        this.rouletteValue = rouletteValue;
+    }
+
+    boolean hasNextRound() {
+        return nextRound;
+    }
+
+    int getRoundNumber() {
+        return roundNumber;
+    }
+
+    boolean isRoundFinished() {
+        return roundFinished;
+    }
+
+    String getWord() {
+        return new String(this.word);
+    }
+
+    String getTip() {
+        return tip;
+    }
+
+    int getScore() {
+        return score;
+    }
+
+    int getAccumulatedScore() {
+        return accumulatedScore;
+    }
+
+    int getHighscore() {
+        return highscore;
+    }
+
+    RoundState toRoundState() {
+        return new RoundState(this.nextRound, this.roundNumber, this.roundFinished, this.getWord(), this.tip,
+                this.rouletteValue, this.score, this.accumulatedScore, this.highscore);
+    }
+}
@@ -0,0 +1,27 @@
+package Client.Util;
+
+/**
+ * Result of a character try: the amount of revealed characters and the round
+ * state after the try.
+ *
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+public class MoveResult {
+
+    private final int revealedCharacters;
+    private final RoundState state;
+
+    public MoveResult(int revealedCharacters, RoundState state) {
+        this.revealedCharacters = revealedCharacters;
+        this.state = state;
+    }
+
+    public int getRevealedCharacters() {
+        return revealedCharacters;
+    }
+
+    public RoundState getState() {
+        return state;
+    }
+}
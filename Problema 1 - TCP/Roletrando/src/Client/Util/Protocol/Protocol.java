@@ -1,14 +1,16 @@
 package Client.Util.Protocol;
 
 /**
- * Default messages for server-client communication.
+ * Default messages for server-client communication. Each message is a binary
+ * frame whose operation code is one of these constants.
  *
+ * @see Server.Util.Protocol.FrameWriter
  * @author Allen Hichard
  * @author Daniel Andrade
  */
 public class Protocol {
 
-    public static final int SEND_USER_NAME = 1;
+    public static final int SEND_USER_NAME = 1; //Answers false if the username is longer than MAX_USERNAME_LENGTH.
     public static final int GET_USER_HIGH_SCORE = 2;
     public static final int GET_WORD = 3;
     public static final int GET_TIP = 4;
@@ -23,5 +25,19 @@ public class Protocol {
     public static final int HAS_NEXT_ROUND = 13;
     public static final int RANKING_TOP3 = 14;
     public static final int GAME_OVER = 15;
-    public static final String SEPARATOR = "-";
+    public static final int GET_ROUND_STATE = 16; //Everything a turn screen shows, in one answer.
+    public static final int STATE_DELTA = 17; //Pushed by the server after a move.
+    public static final int RANKING_TOP = 18; //The best users, the argument is the amount.
+    public static final int RANKING_POSITION = 19; //The user's position and the amount of ranked users.
+    public static final int RANKING_AROUND = 20; //The users around the user, the argument is the radius.
+    public static final int RANKING_PAGE = 21; //The users from an offset, the arguments are offset and limit.
+    public static final int RANKING_WINDOW = 22; //The users from an offset of a window, the arguments are window, offset and limit.
+    public static final int RANKING_WINDOW_POSITION = 23; //The user's position in a window, the argument is the window.
+    public static final int RANKING_PERCENTILE = 24; //Percentage of ranked users below the user, in hundredths of a percent.
+    public static final int RANKING_SCORE_AT_PERCENTILE = 25; //Score above a percentage of ranked users, the argument is the percentage in hundredths.
+    public static final int WINDOW_ALL_TIME = 0; //Windows of RANKING_WINDOW.
+    public static final int WINDOW_DAILY = 1;
+    public static final int WINDOW_WEEKLY = 2;
+    public static final int MAX_USERNAME_LENGTH = 32; //Longest username accepted by SEND_USER_NAME.
+    public static final int PUSH_ID = 0; //Request id of the frames pushed by the server.
 }
@@ -0,0 +1,40 @@
+package Client.Util;
+
+import Server.Util.Engine.RankingItem;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Consecutive users of the ranking, as answered by the server to the ranking
+ * requests.
+ *
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+public class RankingPage implements Iterable<RankingItem> {
+
+    private final int firstPosition; //Position of the first user, starting at 1.
+    private final List<RankingItem> users;
+
+    public RankingPage(int firstPosition, List<RankingItem> users) {
+        this.firstPosition = firstPosition;
+        this.users = users;
+    }
+
+    public int getFirstPosition() {
+        return firstPosition;
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public RankingItem get(int i) {
+        return users.get(i);
+    }
+
+    @Override
+    public Iterator<RankingItem> iterator() {
+        return users.iterator();
+    }
+}
@@ -0,0 +1,82 @@
+package Client.Util;
+
+/**
+ * Snapshot of the current round, as answered by the server to a
+ * GET_ROUND_STATE request.
+ *
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+public class RoundState {
+
+    private final boolean nextRound;
+    private final int roundNumber;
+    private final boolean roundFinished;
+    private final String word;
+    private final String tip;
+    private final int rouletteValue;
+    private final int score;
+    private final int accumulatedScore;
+    private final int highscore;
+
+    public RoundState(boolean nextRound, int roundNumber, boolean roundFinished, String word, String tip,
+            int rouletteValue, int score, int accumulatedScore, int highscore) {
+        this.nextRound = nextRound;
+        this.roundNumber = roundNumber;
+        this.roundFinished = roundFinished;
+        this.word = word;
+        this.tip = tip;
+        this.rouletteValue = rouletteValue;
+        this.score = score;
+        this.accumulatedScore = accumulatedScore;
+        this.highscore = highscore;
+    }
+
+    public boolean hasNextRound() {
+        return nextRound;
+    }
+
+    public int getRoundNumber() {
+        return roundNumber;
+    }
+
+    public boolean isRoundFinished() {
+        return roundFinished;
+    }
+
+    /**
+     *
+     * @return the user's version of the word, with hidden characters.
+     */
+    public String getWord() {
+        return word;
+    }
+
+    public String getTip() {
+        return tip;
+    }
+
+    /**
+     *
+     * @return the last roulette value (the roulette isn't spun).
+     */
+    public int getRouletteValue() {
+        return rouletteValue;
+    }
+
+    /**
+     *
+     * @return the current round score.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    public int getAccumulatedScore() {
+        return accumulatedScore;
+    }
+
+    public int getHighscore() {
+        return highscore;
+    }
+}
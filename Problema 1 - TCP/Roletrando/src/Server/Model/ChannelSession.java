@@ -0,0 +1,127 @@
+package Server.Model;
+
+import Server.Util.Protocol.FrameReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A client connected to the selector server. Keeps the bytes read from the
+ * channel until a whole frame is available and the answers not yet written
+ * to the channel.
+ *
+ * @see SelectorServer
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class ChannelSession {
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final OutboundBuffer outbound; //Answers waiting to be written.
+    private final FrameReader requests;
+    private final ClientHost host;
+    private ByteBuffer inbound; //Bytes read and not yet handled.
+
+    ChannelSession(SocketChannel channel, SelectionKey key) throws IOException {
+        this.channel = channel;
+        this.key = key;
+        this.outbound = new OutboundBuffer();
+        this.requests = new FrameReader(null);
+        this.inbound = ByteBuffer.allocate(256);
+        this.host = new ClientHost(this.outbound);
+    }
+
+    /**
+     * Reads the available bytes and handles every complete frame.
+     *
+     * @return false if the session was closed, true otherwise.
+     * @throws IOException
+     */
+    boolean read() throws IOException {
+        if (this.channel.read(this.inbound) == -1) {
+            this.close();
+            return false;
+        }
+
+        ((Buffer) this.inbound).flip(); //Buffer's methods, ByteBuffer's overrides are Java 9+
+        try {
+            while (this.requests.next(this.inbound)) {
+                if (!this.host.handleRequest(this.requests)) {
+                    this.write();
+                    this.close();
+                    return false;
+                }
+            }
+        } finally {
+            this.inbound.compact();
+        }
+        if (!this.inbound.hasRemaining()) { //A frame bigger than the buffer
+            ByteBuffer bigger = ByteBuffer.allocate(this.inbound.capacity() * 2);
+            ((Buffer) this.inbound).flip();
+            bigger.put(this.inbound);
+            this.inbound = bigger;
+        }
+        this.write();
+        return true;
+    }
+
+    /**
+     * Writes the pending answers. If the channel can't take all of them, the
+     * session waits for the channel to be writable.
+     *
+     * @throws IOException
+     */
+    void write() throws IOException {
+        ByteBuffer pending = this.outbound.pending();
+        if (pending.hasRemaining()) {
+            this.channel.write(pending);
+        }
+        this.outbound.keep(pending);
+        if (this.outbound.size() > 0) {
+            this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            this.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Closes the connection.
+     */
+    void close() {
+        this.key.cancel();
+        try {
+            this.channel.close();
+        } catch (IOException ex) {
+            System.err.println("ERROR: " + ex);
+        }
+    }
+
+    /**
+     * Byte buffer whose content can be written to the channel without a copy.
+     */
+    private static class OutboundBuffer extends ByteArrayOutputStream {
+
+        private ByteBuffer view; //Reused while the array isn't replaced.
+
+        ByteBuffer pending() {
+            if (this.view == null || this.view.array() != this.buf) {
+                this.view = ByteBuffer.wrap(this.buf);
+            }
+            ((Buffer) this.view).limit(this.count).position(0);
+            return this.view;
+        }
+
+        /**
+         * Keeps only the bytes not written yet.
+         */
+        void keep(ByteBuffer pending) {
+            int remaining = pending.remaining();
+            System.arraycopy(this.buf, pending.position(), this.buf, 0, remaining);
+            this.count = remaining;
+        }
+    }
+}
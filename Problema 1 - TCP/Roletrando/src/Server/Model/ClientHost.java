@@ -1,8 +1,9 @@
 package Server.Model;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.Socket;
 import Server.Util.Engine.Game;
 import Server.Util.Engine.Ranking;
@@ -10,6 +11,8 @@ import Server.Util.Engine.RankingItem;
 import Server.Util.Exceptions.DatabaseParsingException;
 import Server.Util.Exceptions.PropertiesFileNotFoundException;
 import Server.Util.Exceptions.RankingLoadException;
+import Server.Util.Protocol.FrameReader;
+import Server.Util.Protocol.FrameWriter;
 import Server.Util.Protocol.Protocol;
 
 /**
@@ -22,10 +25,14 @@ import Server.Util.Protocol.Protocol;
 public class ClientHost implements Runnable {
 
     private final Game game;
-    private final ObjectOutputStream output;
-    private final ObjectInputStream input;
+    private final FrameWriter output;
+    private final FrameReader input;
+    private static final RankingPageCache RANKING_PAGES = new RankingPageCache(); //Shared by every client.
+
     private final Ranking generalRanking;
+    private final boolean eventLoop; //True if the requests are handled by an event loop, which must never wait.
     private String username;
+    private int submittedHighscore; //Best score submitted, maybe not applied by the ranking yet.
 
     /**
      *
@@ -38,113 +45,260 @@ public class ClientHost implements Runnable {
     public ClientHost(Socket client) throws PropertiesFileNotFoundException, DatabaseParsingException, RankingLoadException, IOException  {
         this.game = new Game();
         this.generalRanking = Ranking.instance();
-        this.output = new ObjectOutputStream(client.getOutputStream());
-        this.input = new ObjectInputStream(client.getInputStream());
+        this.output = new FrameWriter(new BufferedOutputStream(client.getOutputStream()));
+        this.input = new FrameReader(new BufferedInputStream(client.getInputStream()));
+        this.eventLoop = false;
     }
 
     /**
-     * Send a message to the client connected in the socket.
+     * Host without an input stream, used by the selector server. The requests
+     * are given through handleRequest and the answers are written in output.
      *
-     * @param data objecto to be sent
-     * @throws IOException
+     * @param output where the answers are written
+     * @throws PropertiesFileNotFoundException
+     * @throws DatabaseParsingException
+     * @throws RankingLoadException
      */
-    private void sendMessage(Object data) throws IOException {
-        this.output.reset();
-        this.output.writeObject(data);
-        this.output.flush();
-    }
-
-    /**
-     * Read a message from the client connected in the socket.
-     *
-     * @return the read message
-     * @throws IOException
-     * @throws ClassNotFoundException
-     */
-    private Object readMessage() throws IOException, ClassNotFoundException {
-        return this.input.readObject();
+    ClientHost(OutputStream output) throws PropertiesFileNotFoundException, DatabaseParsingException, RankingLoadException {
+        this.game = new Game();
+        this.generalRanking = Ranking.instance();
+        this.output = new FrameWriter(output);
+        this.input = null;
+        this.eventLoop = true;
     }
 
     /**
      * Routine to response user's requests. After receive a request, answer it with
      * the corresponding game operation/result. Info:response is represented by 
-     * an integer given in the Protocol class.
+     * an integer given in the Protocol class. The answers of pipelined
+     * requests are flushed together, after the last request received.
      * 
      * @see Protocol
      */
     @Override
     public void run() {
         try {
-            int option;
-            while (true) {
-                option = Integer.parseInt(this.readMessage().toString());
-                switch (option) {
-                    case Protocol.SEND_USER_NAME:
-                        this.username = this.readMessage().toString();
-                        break;
-                    case Protocol.GET_USER_HIGH_SCORE:
-                        this.sendMessage(this.generalRanking.getUserHighscore(this.username));
-                        break;
-                    case Protocol.NEXT_ROUND:
-                        boolean nextRound = this.game.nextRound();
-                        if (nextRound) {
-                            this.generalRanking.refreshUserHighscore(this.username, this.game.getRoundScore());
-                        }
-                        this.sendMessage(nextRound);
-                        break;
-                    case Protocol.GET_WORD:
-                        this.sendMessage(this.game.getUserWord());
-                        break;
-                    case Protocol.GET_TIP:
-                        this.sendMessage(this.game.getTip());
-                        break;
-                    case Protocol.IS_ROULETTE_AVAILABLE:
-                        this.sendMessage(this.game.isIsRouletteAvailable());
-                        break;
-                    case Protocol.GET_ROULETTE_VALUE:
-                        this.sendMessage(this.game.roulette());
-                        break;
-                    case Protocol.TRY_CHARACTER:
-                        Character ch = this.readMessage().toString().charAt(0);
-                        this.sendMessage(this.game.tryCharacter(ch));
-                        break;
-                    case Protocol.GET_ROUND_NUMBER:
-                        this.sendMessage(this.game.getRoundNumber());
-                        break;
-                    case Protocol.IS_ROUND_FINISHED:
-                        this.sendMessage(this.game.isRoundFinished());
-                        break;
-                    case Protocol.HAS_NEXT_ROUND:
-                        this.sendMessage(this.game.hasNextRound());
-                        break;
-                    case Protocol.GET_CURRENT_SCORE:
-                        this.sendMessage(this.game.getRoundScore());
-                        break;
-                    case Protocol.ACCUMULATED_SCORE:
-                        this.sendMessage(this.game.getAccumulatedScore());
-                        break;
-                    case Protocol.RANKING_TOP3:
-                        RankingItem[] top3 = this.generalRanking.getTop3();
-                        StringBuilder rankingInfo = new StringBuilder();
-                        for (RankingItem rankingItem : top3) {
-                            rankingInfo.append(rankingItem.getUsername());
-                            rankingInfo.append(Protocol.SEPARATOR);
-                            rankingInfo.append(rankingItem.getScore());
-                            rankingInfo.append(Protocol.SEPARATOR);
-                        }
-                        this.sendMessage(rankingInfo.toString());
-                        break;
-                    case Protocol.GAME_OVER:
-                        this.input.close();
-                        this.output.close();
-                        System.out.println(this.username + " is now offline");
-                        return;
+            boolean online = true;
+            while (online) {
+                this.input.next();
+                online = this.handleRequest(this.input);
+                if (!this.input.available()) {
+                    this.output.flush();
                 }
             }
-        } catch (IOException | ClassNotFoundException | NumberFormatException ex) {
+            this.input.close();
+            this.output.close();
+        } catch (IOException ex) {
             System.err.println("ERROR: " + ex);
             System.err.println("MESSAGE " + ex.getLocalizedMessage());
         }
     }
 
+    /**
+     * Answers one request. The answer frame has the same operation code and
+     * request id of the request. The answer isn't flushed.
+     *
+     * @param request frame read from the client
+     * @return false if the client left the game, true otherwise.
+     * @throws IOException
+     */
+    boolean handleRequest(FrameReader request) throws IOException {
+        int option = request.getOpcode();
+        switch (option) {
+            case Protocol.SEND_USER_NAME:
+                String username = request.getString();
+                boolean accepted = Ranking.isValidUsername(username);
+                this.username = accepted ? username : null; //Without a username, the scores aren't ranked
+                this.submittedHighscore = 0;
+                this.answer(request).putBoolean(accepted).end();
+                break;
+            case Protocol.GET_USER_HIGH_SCORE:
+                this.answer(request).putInt(this.highscore()).end();
+                break;
+            case Protocol.NEXT_ROUND:
+                boolean nextRound = this.game.nextRound();
+                if (nextRound && this.username != null) {
+                    try {
+                        this.generalRanking.submitUserScore(this.username, this.game.getRoundScore(), !this.eventLoop);
+                    } catch (IOException ex) { //Not synced yet, but kept and retried by the next flushes
+                        System.err.println("ERROR: " + ex);
+                    }
+                    this.submittedHighscore = Math.max(this.submittedHighscore, this.game.getRoundScore());
+                }
+                this.answer(request).putBoolean(nextRound).end();
+                break;
+            case Protocol.GET_WORD:
+                this.answer(request).putString(this.game.getUserWord()).end();
+                break;
+            case Protocol.GET_TIP:
+                this.answer(request).putString(this.game.getTip()).end();
+                break;
+            case Protocol.IS_ROULETTE_AVAILABLE:
+                this.answer(request).putBoolean(this.game.isIsRouletteAvailable()).end();
+                break;
+            case Protocol.GET_ROULETTE_VALUE:
+                int scoreBefore = this.game.getRoundScore();
+                int rouletteValue = this.game.roulette();
+                if (this.game.getRoundScore() != scoreBefore) { //Lost everything
+                    this.pushDelta((char) 0, this.game.getRoundScore() - scoreBefore);
+                }
+                this.answer(request).putInt(rouletteValue).end();
+                break;
+            case Protocol.TRY_CHARACTER:
+                char ch = request.getChar();
+                boolean newWord = this.game.isRoundFinished(); //The try refreshes the word
+                scoreBefore = this.game.getRoundScore();
+                int revealed = this.game.tryCharacter(ch);
+                if (newWord) {
+                    this.writeRoundState(this.output.begin(Protocol.GET_ROUND_STATE, Protocol.PUSH_ID));
+                } else if (revealed > 0) {
+                    this.pushDelta(ch, this.game.getRoundScore() - scoreBefore);
+                }
+                this.answer(request).putInt(revealed).end();
+                break;
+            case Protocol.GET_ROUND_NUMBER:
+                this.answer(request).putInt(this.game.getRoundNumber()).end();
+                break;
+            case Protocol.IS_ROUND_FINISHED:
+                this.answer(request).putBoolean(this.game.isRoundFinished()).end();
+                break;
+            case Protocol.HAS_NEXT_ROUND:
+                this.answer(request).putBoolean(this.game.hasNextRound()).end();
+                break;
+            case Protocol.GET_CURRENT_SCORE:
+                this.answer(request).putInt(this.game.getRoundScore()).end();
+                break;
+            case Protocol.ACCUMULATED_SCORE:
+                this.answer(request).putInt(this.game.getAccumulatedScore()).end();
+                break;
+            case Protocol.RANKING_TOP3:
+                this.answer(request).putFields(this.generalRanking.getTopSnapshot().getFields()).end();
+                break;
+            case Protocol.RANKING_TOP:
+                this.answer(request).putFields(
+                        ClientHost.RANKING_PAGES.get(this.generalRanking, 0, request.getInt())).end();
+                break;
+            case Protocol.RANKING_POSITION:
+                this.answer(request).putInt(this.generalRanking.getPosition(this.username))
+                        .putInt(this.generalRanking.getRankedUsers()).end();
+                break;
+            case Protocol.RANKING_AROUND:
+                int radius = Math.max(0, Math.min(request.getInt(), Ranking.MAX_RANGE / 2));
+                int position = this.generalRanking.getPosition(this.username);
+                int offset = Math.max(0, position - 1 - radius);
+                this.writeRanking(this.answer(request).putInt(offset + 1), position == 0 ? new RankingItem[0]
+                        : this.generalRanking.getRange(offset, 2 * radius + 1));
+                break;
+            case Protocol.RANKING_PAGE:
+                int pageOffset = request.getInt();
+                int pageLimit = request.getInt();
+                this.answer(request).putFields(
+                        ClientHost.RANKING_PAGES.get(this.generalRanking, pageOffset, pageLimit)).end();
+                break;
+            case Protocol.RANKING_WINDOW:
+                int window = request.getInt();
+                int windowOffset = Math.max(0, request.getInt());
+                int windowLimit = request.getInt();
+                this.writeRanking(this.answer(request).putInt(windowOffset + 1),
+                        this.generalRanking.getWindowRange(window, windowOffset, windowLimit));
+                break;
+            case Protocol.RANKING_PERCENTILE:
+                this.answer(request).putInt(
+                        (int) Math.round(100 * this.generalRanking.getPercentile(this.highscore()))).end();
+                break;
+            case Protocol.RANKING_SCORE_AT_PERCENTILE:
+                this.answer(request).putInt(
+                        this.generalRanking.getScoreAtPercentile(request.getInt() / 100.0)).end();
+                break;
+            case Protocol.RANKING_WINDOW_POSITION:
+                this.answer(request).putInt(
+                        this.generalRanking.getWindowPosition(request.getInt(), this.username)).end();
+                break;
+            case Protocol.GET_ROUND_STATE:
+                this.writeRoundState(this.answer(request));
+                break;
+            case Protocol.GAME_OVER:
+                System.out.println(this.username + " is now offline");
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a part of the ranking: the amount of users, then the username
+     * and the score of each user.
+     *
+     * @param answer answer being written, after the position of the first user
+     * @param users sorted users
+     */
+    private void writeRanking(FrameWriter answer, RankingItem[] users) throws IOException {
+        answer.putInt(users.length);
+        for (RankingItem user : users) {
+            answer.putString(user.getUsername()).putInt(user.getScore());
+        }
+        answer.end();
+    }
+
+    /**
+     * Writes the whole round state in a frame.
+     *
+     * @param frame started frame
+     * @throws IOException
+     */
+    private void writeRoundState(FrameWriter frame) throws IOException {
+        frame.putBoolean(this.game.hasNextRound())
+                .putInt(this.game.getRoundNumber())
+                .putBoolean(this.game.isRoundFinished())
+                .putString(this.game.getUserWord())
+                .putString(this.game.getTip())
+                .putInt(this.game.getRouletteValue())
+                .putInt(this.game.getRoundScore())
+                .putInt(this.game.getAccumulatedScore())
+                .putInt(this.highscore())
+                .end();
+    }
+
+    /**
+     * The user's highscore, counting the scores still queued in the ranking,
+     * so the user always sees its own last score.
+     *
+     * @return the user's highscore.
+     */
+    private int highscore() {
+        return Math.max(this.generalRanking.getUserHighscore(this.username), this.submittedHighscore);
+    }
+
+    /**
+     * Pushes what a move changed in the round, so the client doesn't need to
+     * ask for the word and scores again: the character and the positions it
+     * was found (none for a roulette spin), the score change, the roulette
+     * value and the round finished flag.
+     *
+     * @param ch tried character, 0 for a roulette spin
+     * @param scoreChange difference of the round score
+     * @throws IOException
+     */
+    private void pushDelta(char ch, int scoreChange) throws IOException {
+        this.output.begin(Protocol.STATE_DELTA, Protocol.PUSH_ID).putChar(ch);
+        int revealed = ch == 0 ? 0 : this.game.getRevealedCount();
+        this.output.putChar((char) revealed);
+        for (int i = 0; i < revealed; i++) {
+            this.output.putChar((char) this.game.getRevealedPosition(i));
+        }
+        this.output.putInt(scoreChange)
+                .putInt(this.game.getRouletteValue())
+                .putBoolean(this.game.isRoundFinished())
+                .end();
+    }
+
+    /**
+     * Starts the answer of a request.
+     *
+     * @param request being answered
+     * @return the answer's frame
+     */
+    private FrameWriter answer(FrameReader request) {
+        return this.output.begin(request.getOpcode(), request.getRequestId());
+    }
+
 }
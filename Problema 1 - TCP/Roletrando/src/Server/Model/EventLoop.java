@@ -0,0 +1,92 @@
+package Server.Model;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread driving the sessions of many clients through one selector.
+ *
+ * @see SelectorServer
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class EventLoop implements Runnable {
+
+    private final Selector selector;
+    private final Queue<SocketChannel> newClients; //Clients waiting to be registered.
+
+    EventLoop() throws IOException {
+        this.selector = Selector.open();
+        this.newClients = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Gives a new client to this event loop. Can be called from any thread.
+     *
+     * @param client connected channel
+     */
+    void register(SocketChannel client) {
+        this.newClients.add(client);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Registers the clients given since the last selection.
+     */
+    private void registerNewClients() {
+        SocketChannel client;
+        while ((client = this.newClients.poll()) != null) {
+            try {
+                client.configureBlocking(false);
+                SelectionKey key = client.register(this.selector, SelectionKey.OP_READ);
+                key.attach(new ChannelSession(client, key));
+            } catch (IOException ex) {
+                System.err.println("ERROR: " + ex);
+                try {
+                    client.close();
+                } catch (IOException closeEx) {
+                    System.err.println("ERROR: " + closeEx);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for ready channels and handles them.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                this.selector.select();
+            } catch (IOException ex) {
+                System.err.println("ERROR: " + ex);
+                return;
+            }
+            this.registerNewClients();
+
+            Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                ChannelSession session = (ChannelSession) key.attachment();
+                try {
+                    if (key.isReadable() && !session.read()) {
+                        continue;
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        session.write();
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    System.err.println("ERROR: " + ex);
+                    session.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package Server.Model;
+
+import Client.Model.Client;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compares the server modes on the loopback interface. For each mode, a
+ * server is started in this JVM, all the clients connect and stay connected,
+ * then a few driver threads send requests through every connection.
+ *
+ * Usage: LoopbackBenchmark [clients] [requests per client] [modes]
+ * e.g. LoopbackBenchmark 5000 20 blocking,virtual,selector
+ *
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+public class LoopbackBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String[] modes = args.length > 2 ? args[2].split(",")
+                : new String[]{Server.BLOCKING_MODE, Server.VIRTUAL_MODE};
+
+        for (String mode : modes) {
+            if (!Server.isModeSupported(mode)) {
+                System.out.println(mode + " skipped: not supported by Java " + System.getProperty("java.version"));
+                continue;
+            }
+            int port;
+            try {
+                port = LoopbackBenchmark.startServer(mode);
+            } catch (IOException ex) {
+                System.out.println(mode + " skipped: " + ex.getMessage());
+                continue;
+            }
+            LoopbackBenchmark.measure(mode, port, clients, requests);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Starts a server in a daemon thread.
+     *
+     * @param mode server mode
+     * @return the server's port
+     * @throws IOException if the server stopped while starting.
+     * @throws Exception
+     */
+    private static int startServer(String mode) throws Exception {
+        int port;
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        final Server server = new Server(port, mode, Runtime.getRuntime().availableProcessors());
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException | RuntimeException ex) {
+                    failure.set(ex);
+                }
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+        serverThread.join(500); //Time to bind the port
+        if (!serverThread.isAlive()) { //The server never stops by itself
+            throw new IOException("the server stopped while starting: " + failure.get());
+        }
+        return port;
+    }
+
+    private static void measure(String mode, int port, int clients, final int requests) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long start = System.nanoTime();
+
+        final List<Client> connections = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            connections.add(new Client("localhost", port));
+        }
+        long connected = System.nanoTime();
+
+        final int drivers = Runtime.getRuntime().availableProcessors() * 2;
+        final AtomicLong answered = new AtomicLong();
+        Thread[] driverThreads = new Thread[drivers];
+        for (int d = 0; d < drivers; d++) {
+            final int first = d;
+            driverThreads[d] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int r = 0; r < requests; r++) {
+                            for (int i = first; i < connections.size(); i += drivers) {
+                                connections.get(i).getRoundNumber();
+                                answered.incrementAndGet();
+                            }
+                        }
+                    } catch (IOException ex) {
+                        System.err.println("ERROR: " + ex);
+                    }
+                }
+            });
+            driverThreads[d].start();
+        }
+        for (Thread driver : driverThreads) {
+            driver.join();
+        }
+        long finished = System.nanoTime();
+
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        double seconds = (finished - connected) / 1e9;
+        System.out.printf("%-9s clients=%d connect=%dms requests=%d throughput=%.0f req/s "
+                + "peakPlatformThreads=%d heap=%dMB%n",
+                mode, clients, (connected - start) / 1000000, answered.get(),
+                answered.get() / seconds, threads.getPeakThreadCount(), usedHeap);
+
+        for (Client client : connections) {
+            client.disconnect();
+        }
+    }
+}
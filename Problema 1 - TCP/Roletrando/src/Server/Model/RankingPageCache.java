@@ -0,0 +1,76 @@
+package Server.Model;
+
+import Server.Util.Engine.Ranking;
+import Server.Util.Engine.RankingItem;
+import Server.Util.Protocol.FrameWriter;
+import Server.Util.Protocol.Protocol;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answers of RANKING_PAGE and RANKING_TOP, encoded once and shared by every
+ * client. A page is valid while the ranking's generation is the one it was
+ * encoded from. The pages within the first MAX_RANGE positions use the top
+ * generation, so they aren't encoded again when only lower positions change.
+ *
+ * @see Ranking#getGeneration()
+ * @see Ranking#getTopGeneration()
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class RankingPageCache {
+
+    private static final int MAX_PAGES = 1024; //Pages kept before the cache is emptied.
+
+    private final ConcurrentHashMap<Long, Page> pages; //Pages by offset and limit.
+
+    RankingPageCache() {
+        this.pages = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the encoded fields of a page: the position of the first user, the
+     * amount of users, then the username and the score of each user.
+     *
+     * @param ranking the ranking
+     * @param offset amount of users skipped
+     * @param limit maximum amount of users
+     * @return the page's fields.
+     */
+    byte[] get(Ranking ranking, int offset, int limit) {
+        offset = Math.max(0, offset);
+        limit = Math.max(0, Math.min(limit, Ranking.MAX_RANGE));
+        Long key = ((long) offset << 32) | limit;
+        long generation = offset + limit <= Ranking.MAX_RANGE //Read before the users
+                ? ranking.getTopGeneration() : ranking.getGeneration();
+        Page page = this.pages.get(key);
+        if (page != null && page.generation == generation) {
+            return page.fields;
+        }
+
+        FrameWriter encoder = new FrameWriter(null);
+        encoder.begin(Protocol.RANKING_PAGE, 0).putInt(offset + 1);
+        RankingItem[] users = ranking.getRange(offset, limit);
+        encoder.putInt(users.length);
+        for (RankingItem user : users) {
+            encoder.putString(user.getUsername()).putInt(user.getScore());
+        }
+        page = new Page(generation, encoder.getFields());
+
+        if (this.pages.size() >= RankingPageCache.MAX_PAGES) {
+            this.pages.clear();
+        }
+        this.pages.put(key, page);
+        return page.fields;
+    }
+
+    private static class Page {
+
+        private final long generation; //Ranking's generation when encoded.
+        private final byte[] fields;
+
+        Page(long generation, byte[] fields) {
+            this.generation = generation;
+            this.fields = fields;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package Server.Model;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Non-blocking server. Instead of one thread per client, a fixed number of
+ * event loops drives all the clients' sessions.
+ *
+ * @see EventLoop
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+public class SelectorServer {
+
+    private final int port;
+    private final EventLoop[] eventLoops;
+
+    /**
+     *
+     * @param port server's port
+     * @param eventLoops amount of event loop threads
+     * @throws IOException if a selector can't be opened
+     */
+    public SelectorServer(int port, int eventLoops) throws IOException {
+        this.port = port;
+        this.eventLoops = new EventLoop[Math.max(1, eventLoops)];
+        for (int i = 0; i < this.eventLoops.length; i++) {
+            this.eventLoops[i] = new EventLoop();
+        }
+    }
+
+    /**
+     * Run the server. Starts the event loops and gives each new client to one
+     * of them.
+     *
+     * @throws IOException
+     */
+    public void run() throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(this.port));
+        for (int i = 0; i < this.eventLoops.length; i++) {
+            Thread loopThread = new Thread(this.eventLoops[i], "event-loop-" + i);
+            loopThread.start();
+        }
+        System.out.println("Server online (" + this.eventLoops.length + " event loops)");
+
+        for (int next = 0; true; next = (next + 1) % this.eventLoops.length) {
+            SocketChannel client = server.accept(); // Waiting for a client
+            System.out.println("New client connected " + client.socket().getInetAddress().getHostAddress());
+            this.eventLoops[next].register(client);
+        }
+    }
+}
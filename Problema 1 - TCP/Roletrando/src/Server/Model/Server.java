@@ -1,12 +1,19 @@
 package Server.Model;
 
 import Server.Util.Engine.Ranking;
+import Server.Util.Exceptions.DatabaseParsingException;
+import Server.Util.Exceptions.PropertiesFileNotFoundException;
 import Server.Util.Exceptions.RankingLoadException;
+import Server.Util.WordManager.WordDictionary;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Properties;
 import java.util.Scanner;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import javax.swing.JFileChooser;
 
 /**
@@ -15,13 +22,39 @@ import javax.swing.JFileChooser;
  * @author Daniel Andrade
  */
 public class Server {
+    public static final String BLOCKING_MODE = "blocking"; //One thread per client.
+    public static final String SELECTOR_MODE = "selector"; //Event loops, see SelectorServer.
+    public static final String VIRTUAL_MODE = "virtual"; //One virtual thread per client (Java 21+).
+
     private final int port;
+    private final String mode;
+    private final int eventLoops;
+
+    public Server(int port) throws RankingLoadException, PropertiesFileNotFoundException, DatabaseParsingException {
+        this(port, BLOCKING_MODE, 1);
+    }
 
-    public Server(int port) throws RankingLoadException {
+    /**
+     *
+     * @param port server's port
+     * @param mode BLOCKING_MODE, SELECTOR_MODE or VIRTUAL_MODE
+     * @param eventLoops amount of event loop threads, used by SELECTOR_MODE
+     * @throws RankingLoadException
+     * @throws PropertiesFileNotFoundException
+     * @throws DatabaseParsingException
+     */
+    public Server(int port, String mode, int eventLoops) throws RankingLoadException, PropertiesFileNotFoundException, DatabaseParsingException {
         this.port = port;
+        this.mode = mode;
+        this.eventLoops = eventLoops;
         this.loadRankingFiles();
+        WordDictionary.instance(); //Loads the dataset before the first client
     }
     
+    /**
+     * Loads the ranking files, unless main already loaded the mapped ranking.
+     * @throws RankingLoadException
+     */
     private void loadRankingFiles() throws RankingLoadException{
         //Scanner reader = new Scanner(System.in);
         //System.out.print("Ranking path: ");
@@ -30,27 +63,123 @@ public class Server {
         //String top3 = reader.nextLine();
         Ranking.instance().loadRankings("ranking.data", "top3.data");
     }
+
     /**
-     * Run the server. Wait for a client and redirects it to the game thread.
+     * Run the server in the chosen mode.
      * @throws IOException 
      */
     public void run() throws IOException{
+        if (SELECTOR_MODE.equals(this.mode)) {
+            new SelectorServer(this.port, this.eventLoops).run();
+        } else {
+            this.runBlocking();
+        }
+    }
+
+    /**
+     * Wait for a client and redirects it to the game thread. The host is
+     * created by the game thread, so a slow client doesn't delay the others.
+     * @throws IOException 
+     */
+    private void runBlocking() throws IOException{
+        Executor sessions = this.sessionExecutor();
         ServerSocket server = new ServerSocket(this.port);
-        System.out.println("Server online");
+        System.out.println("Server online (" + this.mode + ")");
         
         while(true){
             System.out.println("Waiting...");
-            Socket client = server.accept(); // Waiting for a client
+            final Socket client = server.accept(); // Waiting for a client
             System.out.println("New client connected " + client.getInetAddress().getHostAddress());
             
-            ClientHost clientHost = new ClientHost(client);
-            Thread clientThread = new Thread(clientHost);
-            clientThread.start();
+            sessions.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new ClientHost(client).run();
+                    } catch (IOException ex) {
+                        System.err.println("ERROR: " + ex);
+                    }
+                }
+            });
         }
     }
+
+    /**
+     * Checks if a mode can run on this Java version: VIRTUAL_MODE needs
+     * Java 21 or newer.
+     * @param mode BLOCKING_MODE, SELECTOR_MODE or VIRTUAL_MODE
+     * @return true if the mode can run, false otherwise.
+     */
+    public static boolean isModeSupported(String mode) {
+        if (!VIRTUAL_MODE.equals(mode)) {
+            return true;
+        }
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Executor of the client hosts: a new platform thread per client, or a
+     * new virtual thread per client in VIRTUAL_MODE.
+     * @return the executor
+     */
+    private Executor sessionExecutor() {
+        if (VIRTUAL_MODE.equals(this.mode)) {
+            try {
+                //Looked up by reflection, the project still targets Java 7.
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                throw new UnsupportedOperationException("Virtual threads need Java 21 or newer", ex);
+            }
+        }
+        return new Executor() {
+            @Override
+            public void execute(Runnable clientHost) {
+                Thread clientThread = new Thread(clientHost);
+                clientThread.start();
+            }
+        };
+    }
     
-    
+    /**
+     * Starts the server with the options of server.properties (port, mode,
+     * eventLoops and the ranking's flush options). Without the file, a
+     * blocking server runs on port 12345.
+     * @param args
+     * @throws IOException 
+     */
     public static void main(String[] args) throws IOException {
-        new Server(12345).run();
+        Properties properties = new Properties();
+        try (FileInputStream file = new FileInputStream("server.properties")) {
+            properties.load(file);
+        } catch (IOException ex) {
+            System.out.println("server.properties was not found, using default options");
+        }
+        int port = Integer.parseInt(properties.getProperty("port", "12345"));
+        String mode = properties.getProperty("mode", BLOCKING_MODE);
+        if (!isModeSupported(mode)) { //Checked before the ranking is loaded
+            System.err.println("WARNING: mode " + mode + " is not supported by Java "
+                    + System.getProperty("java.version") + ", using " + BLOCKING_MODE);
+            mode = BLOCKING_MODE;
+        }
+        int eventLoops = Integer.parseInt(properties.getProperty("eventLoops",
+                "" + Runtime.getRuntime().availableProcessors()));
+        Ranking.instance().setScoreQueue(Integer.parseInt(properties.getProperty("rankingScoreQueue",
+                "" + Ranking.DEFAULT_SCORE_QUEUE_CAPACITY)));
+        Ranking.instance().setShards(Integer.parseInt(properties.getProperty("rankingShards", "1")));
+        Ranking.instance().setDurableCommits(
+                Boolean.parseBoolean(properties.getProperty("rankingDurableCommits", "true")));
+        Ranking.instance().setWriteBehind(
+                Long.parseLong(properties.getProperty("rankingFlushInterval", "" + Ranking.DEFAULT_FLUSH_INTERVAL)),
+                Integer.parseInt(properties.getProperty("rankingFlushThreshold", "" + Ranking.DEFAULT_FLUSH_THRESHOLD)),
+                Integer.parseInt(properties.getProperty("rankingCompactionThreshold", "" + Ranking.DEFAULT_COMPACTION_THRESHOLD)));
+        if (Ranking.MAPPED_BACKEND.equals(properties.getProperty("rankingBackend", Ranking.PROPERTIES_BACKEND))) {
+            Ranking.instance().loadMappedRanking(properties.getProperty("rankingMappedFile", "ranking.bin"), "ranking.data");
+        }
+        new Server(port, mode, eventLoops).run();
     }
 }
@@ -5,6 +5,7 @@ import Server.Util.Exceptions.PropertiesFileNotFoundException;
 import Server.Util.WordManager.WordManager;
 import Server.Util.WordManager.WordTuple;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.Scanner;
 
@@ -16,6 +17,8 @@ import java.util.Scanner;
  */
 public class Game {
 
+    private static final int BUCKETS = 64; //'A' to 'Z' never share a bucket.
+
     private String word; //Game's word.
     private StringBuilder wordBuilder; //User's version of the game's word.
     private String tip; //Word's tip
@@ -27,6 +30,11 @@ public class Game {
     private boolean isRouletteAvailable;
     private final int numberOfRounds;
     private int accumulatedScore;
+    private int[] revealedPositions; //Positions found by the last tryCharacter.
+    private int revealedCount;
+    private final int[] firstPosition; //First position of each letter's bucket.
+    private int[] nextPosition; //Next position in the same bucket, or -1.
+    private int hiddenCount; //Characters not revealed yet.
 
     public Game() throws PropertiesFileNotFoundException, DatabaseParsingException {
         this.roundNumber = 1;
@@ -35,6 +43,9 @@ public class Game {
         this.isRouletteAvailable = true;
         this.wordManager = new WordManager();
         this.wordBuilder = new StringBuilder();
+        this.revealedPositions = new int[32];
+        this.firstPosition = new int[Game.BUCKETS];
+        this.nextPosition = new int[32];
         this.rouletteValues = new int[]{100, 200, 300, 400, 500, 600, 700, 800, 900, 100, 0};
         this.refreshData();
     }
@@ -75,16 +86,37 @@ public class Game {
             WordTuple next = this.wordManager.getTuple();
             this.word = next.getWord();
             this.tip = next.getTip();
-            this.wordBuilder = new StringBuilder();
+            this.wordBuilder.setLength(0);
 
-            for (int i = 0; i < this.word.length() - 1; i++) {
+            int length = this.word.length() - 1;
+            for (int i = 0; i < length; i++) {
                 this.wordBuilder.append('-');
             }
+            this.hiddenCount = length;
+            this.indexPositions(length);
             return true;
         }
         return false;
     }
 
+    /**
+     * Chains the positions of the word by character bucket, so tryCharacter
+     * visits only the positions that may hold the character.
+     *
+     * @param length amount of characters shown to the user
+     */
+    private void indexPositions(int length) {
+        if (this.nextPosition.length < length) {
+            this.nextPosition = new int[Math.max(length, this.nextPosition.length * 2)];
+        }
+        Arrays.fill(this.firstPosition, -1);
+        for (int i = length - 1; i >= 0; i--) {
+            int bucket = this.word.charAt(i) & (Game.BUCKETS - 1);
+            this.nextPosition[i] = this.firstPosition[bucket];
+            this.firstPosition[bucket] = i;
+        }
+    }
+
     /**
      * Get and replace ch ocurrences in the current word. After the changes, the
      * score is updated.
@@ -101,19 +133,46 @@ public class Game {
         this.isRouletteAvailable = true;
 
         int occurrences = 0;
-        int index = 0;
 
-        while ((index = this.word.indexOf("" + ch, index)) != -1) {
+        for (int index = this.firstPosition[ch & (Game.BUCKETS - 1)]; index != -1;
+                index = this.nextPosition[index]) {
+            if (this.word.charAt(index) != ch) {
+                continue;
+            }
+            if (this.wordBuilder.charAt(index) == '-') {
+                this.hiddenCount--;
+            }
             this.wordBuilder.setCharAt(index, ch);
-            index++;
+            if (occurrences == this.revealedPositions.length) {
+                this.revealedPositions = Arrays.copyOf(this.revealedPositions, occurrences * 2);
+            }
+            this.revealedPositions[occurrences] = index;
             occurrences++;
         }
+        this.revealedCount = occurrences;
 
         this.score += occurrences * this.rouletteValue;
 
         return occurrences;
     }
 
+    /**
+     *
+     * @return amount of positions found by the last tryCharacter.
+     */
+    public int getRevealedCount() {
+        return this.revealedCount;
+    }
+
+    /**
+     *
+     * @param i index, lower than getRevealedCount()
+     * @return a position of the word found by the last tryCharacter.
+     */
+    public int getRevealedPosition(int i) {
+        return this.revealedPositions[i];
+    }
+
     /**
      * Random roulette value or the current roullete value in case the roulette
      * isn't available.
@@ -132,13 +191,22 @@ public class Game {
         return this.rouletteValue;
     }
 
+    /**
+     * Current roulette value, without spinning the roulette.
+     *
+     * @return the value of each revealed character
+     */
+    public int getRouletteValue() {
+        return this.rouletteValue;
+    }
+
     /**
      * Check if the turn is over and prepare for another roundNumber.
      *
      * @return true if the roundNumber is finished, false otherwise.
      */
     public boolean isRoundFinished() {
-        return this.wordBuilder.indexOf("-") == -1;
+        return this.hiddenCount == 0;
 
     }
 
@@ -0,0 +1,247 @@
+package Server.Util.Engine;
+
+import java.util.Arrays;
+
+/**
+ * Highscore of each user, kept in primitive arrays on the heap. The users are split in
+ * stripes by the hash of the username, and each stripe has its own lock, so
+ * sessions updating different stripes don't wait for each other.
+ *
+ * A stripe gives each user an id. The username's characters are appended to
+ * the stripe's character table and the score is an int at the id, so a user
+ * costs a few ints plus 2 bytes per character, instead of a String, a boxed
+ * score and a hash table entry. The ids are found through an open addressing
+ * table of ids. The store's id of a user is its stripe's id times STRIPES plus
+ * the stripe's number, so the ids stay dense.
+ *
+ * @see ScoreStore
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class HeapScoreStore extends ScoreStore {
+
+    private static final int STRIPES = 32; //Power of 2.
+
+    private final Stripe[] stripes;
+
+    HeapScoreStore() {
+        this.stripes = new Stripe[HeapScoreStore.STRIPES];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    int get(String username) {
+        int hash = ScoreStore.hash(username);
+        Stripe stripe = this.stripe(hash);
+        synchronized (stripe) {
+            int slot = stripe.find(username, hash);
+            return slot < 0 ? ScoreStore.MISSING : stripe.scores[stripe.slots[slot] - 1];
+        }
+    }
+
+    @Override
+    boolean raise(String username, int score) {
+        return this.raiseFrom(username, score) < score;
+    }
+
+    @Override
+    int raiseFrom(String username, int score) {
+        int hash = ScoreStore.hash(username);
+        Stripe stripe = this.stripe(hash);
+        synchronized (stripe) {
+            int slot = stripe.find(username, hash);
+            if (slot < 0) {
+                stripe.add(username, hash, score);
+                return ScoreStore.MISSING;
+            }
+            int id = stripe.slots[slot] - 1;
+            int previous = stripe.scores[id];
+            if (previous < score) {
+                stripe.scores[id] = score;
+            }
+            return previous;
+        }
+    }
+
+    @Override
+    int size() {
+        int size = 0;
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    int id(String username) {
+        int hash = ScoreStore.hash(username);
+        int number = HeapScoreStore.stripeNumber(hash);
+        Stripe stripe = this.stripes[number];
+        synchronized (stripe) {
+            int slot = stripe.find(username, hash);
+            return slot < 0 ? ScoreStore.MISSING : (stripe.slots[slot] - 1) * HeapScoreStore.STRIPES + number;
+        }
+    }
+
+    @Override
+    String username(int id) {
+        Stripe stripe = this.stripes[id & (HeapScoreStore.STRIPES - 1)];
+        synchronized (stripe) {
+            return stripe.username(id / HeapScoreStore.STRIPES);
+        }
+    }
+
+    @Override
+    int compareUsername(int id, String username) {
+        Stripe stripe = this.stripes[id & (HeapScoreStore.STRIPES - 1)];
+        synchronized (stripe) {
+            return stripe.compare(id / HeapScoreStore.STRIPES, username);
+        }
+    }
+
+    /**
+     * Visits every user, one stripe at a time.
+     */
+    @Override
+    void visit(Visitor visitor) {
+        for (Stripe stripe : this.stripes) {
+            int size;
+            String[] usernames;
+            int[] scores;
+            synchronized (stripe) { //Copied, so the visitor runs without the lock
+                size = stripe.size;
+                usernames = new String[size];
+                for (int id = 0; id < size; id++) {
+                    usernames[id] = stripe.username(id);
+                }
+                scores = Arrays.copyOf(stripe.scores, size);
+            }
+            for (int id = 0; id < size; id++) {
+                visitor.visit(usernames[id], scores[id]);
+            }
+        }
+    }
+
+    private Stripe stripe(int hash) {
+        return this.stripes[HeapScoreStore.stripeNumber(hash)];
+    }
+
+    private static int stripeNumber(int hash) {
+        return hash >>> 27 & (HeapScoreStore.STRIPES - 1);
+    }
+
+
+    private static class Stripe {
+
+        private int[] slots; //Id + 1 of a user, or 0. The length is a power of 2.
+        private int[] scores; //Highscore of each id.
+        private int[] nameStart; //Start of each id's username in names; the next start is its end.
+        private char[] names; //Characters of the usernames, in id order.
+        private int size; //Amount of users.
+
+        Stripe() {
+            this.slots = new int[16];
+            this.scores = new int[8];
+            this.nameStart = new int[9];
+            this.names = new char[64];
+        }
+
+        /**
+         *
+         * @return the slot of the user, or -(free slot + 1) if it's unknown.
+         */
+        int find(String username, int hash) {
+            int mask = this.slots.length - 1;
+            for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+                int entry = this.slots[slot];
+                if (entry == 0) {
+                    return -(slot + 1);
+                }
+                if (this.matches(entry - 1, username)) {
+                    return slot;
+                }
+            }
+        }
+
+        private boolean matches(int id, String username) {
+            int start = this.nameStart[id];
+            int length = this.nameStart[id + 1] - start;
+            if (length != username.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (this.names[start + i] != username.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int compare(int id, String username) {
+            int start = this.nameStart[id];
+            int length = this.nameStart[id + 1] - start;
+            for (int i = 0; i < Math.min(length, username.length()); i++) {
+                if (this.names[start + i] != username.charAt(i)) {
+                    return this.names[start + i] - username.charAt(i);
+                }
+            }
+            return length - username.length();
+        }
+
+        /**
+         *
+         * @return the same hash of the username, without creating the String.
+         */
+        private int hash(int id) {
+            int stringHash = 0;
+            for (int i = this.nameStart[id]; i < this.nameStart[id + 1]; i++) {
+                stringHash = 31 * stringHash + this.names[i];
+            }
+            return ScoreStore.mix(stringHash);
+        }
+
+        String username(int id) {
+            int start = this.nameStart[id];
+            return new String(this.names, start, this.nameStart[id + 1] - start);
+        }
+
+        void add(String username, int hash, int score) {
+            int id = this.size;
+            if (id == this.scores.length) {
+                this.scores = Arrays.copyOf(this.scores, id * 2);
+                this.nameStart = Arrays.copyOf(this.nameStart, id * 2 + 1);
+            }
+            int start = this.nameStart[id];
+            if (start + username.length() > this.names.length) {
+                this.names = Arrays.copyOf(this.names,
+                        Math.max(this.names.length * 2, start + username.length()));
+            }
+            username.getChars(0, username.length(), this.names, start);
+            this.nameStart[id + 1] = start + username.length();
+            this.scores[id] = score;
+            this.size++;
+
+            if (this.size * 2 > this.slots.length) { //Keeps the table at most half full
+                this.rehash();
+            } else {
+                this.slots[-this.find(username, hash) - 1] = id + 1;
+            }
+        }
+
+        private void rehash() {
+            this.slots = new int[this.slots.length * 2];
+            int mask = this.slots.length - 1;
+            for (int id = 0; id < this.size; id++) {
+                int slot = this.hash(id) & mask;
+                while (this.slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                this.slots[slot] = id + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package Server.Util.Engine;
+
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ranking of the scores made in the current day or week. The scores are kept
+ * in a bucket for the current period; when a new period starts, the bucket is
+ * replaced by an empty one, so the old scores expire at once, without looking
+ * at any user.
+ *
+ * The bucket is saved by the Ranking's flush as a snapshot, which is put back
+ * at startup if it's still of the current period.
+ *
+ * @see Ranking
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class LeaderboardWindow {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final int MONDAY_OFFSET = 3; //1970-01-01 was a Thursday.
+    private static final String PERIOD_KEY = "period of the window, not a username"; //Longer than any username.
+
+    private final int days; //Length of the period.
+    private final AtomicReference<Bucket> current; //Bucket of the current period.
+
+    /**
+     *
+     * @param days length of the period: 1 for a daily ranking, 7 for a weekly
+     * one, starting on Monday
+     */
+    LeaderboardWindow(int days) {
+        this.days = days;
+        this.current = new AtomicReference<>(new Bucket(this.period(System.currentTimeMillis())));
+    }
+
+    /**
+     * Puts a score in the current period, if it's the user's best one.
+     *
+     * @param username of the user
+     * @param score made by the user
+     * @return true if the window was changed, false otherwise.
+     */
+    boolean raise(String username, int score) {
+        Bucket bucket = this.bucket();
+        bucket.scores.raise(username, score); //Before the index, which finds the user by its id
+        return bucket.index.raise(username, score);
+    }
+
+    /**
+     *
+     * @param username of the user
+     * @return the user's position in the current period, starting at 1, or 0
+     * if the user has no score in it.
+     */
+    int position(String username) {
+        return this.bucket().index.position(username);
+    }
+
+    /**
+     * Gets the users from a position of the current period.
+     *
+     * @param offset amount of users skipped, position - 1
+     * @param limit maximum amount of users
+     * @return the users, sorted.
+     */
+    RankingItem[] range(int offset, int limit) {
+        return this.bucket().index.range(offset, limit);
+    }
+
+    /**
+     * Gets the scores of the current period, to be saved.
+     *
+     * @return the best score of each user in the period, and the period's
+     * number.
+     */
+    Properties snapshot() {
+        Bucket bucket = this.bucket();
+        final Properties snapshot = new Properties();
+        bucket.scores.visit(new ScoreStore.Visitor() {
+            @Override
+            public void visit(String username, int score) {
+                snapshot.setProperty(username, "" + score);
+            }
+        });
+        snapshot.setProperty(LeaderboardWindow.PERIOD_KEY, "" + bucket.period);
+        return snapshot;
+    }
+
+    /**
+     * Puts back the scores of a snapshot, unless it's of an older period,
+     * whose scores have expired.
+     *
+     * @param snapshot made by snapshot()
+     */
+    void restore(Properties snapshot) {
+        if (!("" + this.bucket().period).equals(snapshot.getProperty(LeaderboardWindow.PERIOD_KEY))) {
+            return;
+        }
+        for (String username : snapshot.stringPropertyNames()) {
+            try {
+                if (!LeaderboardWindow.PERIOD_KEY.equals(username)) {
+                    this.raise(username, Integer.parseInt(snapshot.getProperty(username)));
+                }
+            } catch (NumberFormatException ex) { //Not a score
+            }
+        }
+    }
+
+    /**
+     * Gets the bucket of the current period. The first thread to see a new
+     * period replaces the bucket; the others use the one it published.
+     */
+    private Bucket bucket() {
+        long period = this.period(System.currentTimeMillis());
+        Bucket bucket = this.current.get();
+        while (bucket.period < period) {
+            Bucket next = new Bucket(period);
+            if (this.current.compareAndSet(bucket, next)) {
+                return next;
+            }
+            bucket = this.current.get();
+        }
+        return bucket;
+    }
+
+    /**
+     *
+     * @param time milliseconds since the epoch
+     * @return number of the period, in the server's time zone.
+     */
+    private long period(long time) {
+        long day = (time + TimeZone.getDefault().getOffset(time)) / LeaderboardWindow.DAY;
+        return (day + LeaderboardWindow.MONDAY_OFFSET) / this.days;
+    }
+
+    private static class Bucket {
+
+        private final long period;
+        private final HeapScoreStore scores; //Best score of each user in the period.
+        private final RankingIndex index; //The users of scores, sorted.
+
+        Bucket(long period) {
+            this.period = period;
+            this.scores = new HeapScoreStore();
+            this.index = new RankingIndex(this.scores);
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package Server.Util.Engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Highscore of each user, kept in a binary file mapped in memory, so the heap
+ * doesn't grow with the amount of users and nothing is parsed at startup.
+ *
+ * The file has a header (magic, version, capacity and amount of records), an
+ * open addressing table of capacity slots, each one the record number + 1 of
+ * a user or 0, and then the records. A record has a fixed size: the score (4
+ * bytes), the username's length (2 bytes) and up to Ranking.MAX_USERNAME_LENGTH
+ * characters. A new highscore is written in place over the score.
+ *
+ * The table is kept at most half full; when it's full, the file is rebuilt
+ * with twice the capacity and renamed over the old one.
+ *
+ * @see Ranking#loadMappedRanking(String, String)
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class MappedScoreStore extends ScoreStore {
+
+    private static final int MAGIC = 0x52534352;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 4 + 2 + 2 * Ranking.MAX_USERNAME_LENGTH;
+    private static final int INITIAL_CAPACITY = 1024; //Slots of a new file, power of 2.
+    private static final int LOCKS = 32; //Power of 2.
+
+    private final File file;
+    private final ReentrantReadWriteLock structure; //Write locked only to grow the file.
+    private final Object[] locks; //Striped by username, guard each user's record.
+    private final Object insertLock; //Serializes the new users.
+    private MappedByteBuffer buffer;
+    private int capacity; //Slots, power of 2.
+    private volatile int count; //Amount of records.
+
+    private MappedScoreStore(File file) throws IOException {
+        this.file = file;
+        this.structure = new ReentrantReadWriteLock();
+        this.locks = new Object[MappedScoreStore.LOCKS];
+        for (int i = 0; i < this.locks.length; i++) {
+            this.locks[i] = new Object();
+        }
+        this.insertLock = new Object();
+        this.map();
+    }
+
+    /**
+     * Opens a store, creating its file if needed.
+     *
+     * @param file location of the file
+     * @return the store
+     * @throws IOException if the file can't be created or isn't a store.
+     */
+    static MappedScoreStore open(File file) throws IOException {
+        if (!file.exists()) {
+            MappedScoreStore.create(file, MappedScoreStore.INITIAL_CAPACITY, null);
+        }
+        return new MappedScoreStore(file);
+    }
+
+    /**
+     * Creates a file with the given capacity, holding the records of another
+     * store, and renames it over the file.
+     *
+     * @param file location of the file
+     * @param capacity amount of slots
+     * @param old store whose records are copied, or null
+     * @throws IOException
+     */
+    private static void create(File file, int capacity, MappedScoreStore old) throws IOException {
+        long length = MappedScoreStore.length(capacity);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Ranking file is full: " + file);
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile output = new RandomAccessFile(temporary, "rw")) {
+            output.setLength(0);
+            output.setLength(length);
+            MappedByteBuffer target = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            int records = old == null ? 0 : old.count;
+            target.putInt(0, MappedScoreStore.MAGIC);
+            target.putInt(4, MappedScoreStore.VERSION);
+            target.putInt(8, capacity);
+            target.putInt(12, records);
+            int mask = capacity - 1;
+            for (int id = 0; id < records; id++) {
+                int from = old.record(id);
+                int to = MappedScoreStore.HEADER_SIZE + capacity * 4 + id * MappedScoreStore.RECORD_SIZE;
+                for (int i = 0; i < MappedScoreStore.RECORD_SIZE; i++) {
+                    target.put(to + i, old.buffer.get(from + i));
+                }
+                int slot = old.nameHash(id) & mask;
+                while (target.getInt(MappedScoreStore.HEADER_SIZE + slot * 4) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                target.putInt(MappedScoreStore.HEADER_SIZE + slot * 4, id + 1);
+            }
+            target.force();
+        }
+        Files.move(temporary.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static long length(int capacity) {
+        return MappedScoreStore.HEADER_SIZE + capacity * 4L + (long) (capacity / 2) * MappedScoreStore.RECORD_SIZE;
+    }
+
+    /**
+     * Maps the file and checks its header.
+     *
+     * @throws IOException if the file isn't a store.
+     */
+    private void map() throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(this.file, "rw")) {
+            MappedByteBuffer mapped = input.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, input.length());
+            if (input.length() < MappedScoreStore.HEADER_SIZE
+                    || mapped.getInt(0) != MappedScoreStore.MAGIC
+                    || mapped.getInt(4) != MappedScoreStore.VERSION
+                    || input.length() != MappedScoreStore.length(mapped.getInt(8))) {
+                throw new IOException("Not a ranking file: " + this.file);
+            }
+            this.buffer = mapped;
+            this.capacity = mapped.getInt(8);
+            this.count = mapped.getInt(12);
+        }
+    }
+
+    @Override
+    int get(String username) {
+        if (username.length() > Ranking.MAX_USERNAME_LENGTH) { //Can't be stored
+            return ScoreStore.MISSING;
+        }
+        int hash = ScoreStore.hash(username);
+        this.structure.readLock().lock();
+        try {
+            synchronized (this.lock(hash)) {
+                int slot = this.find(username, hash);
+                return slot < 0 ? ScoreStore.MISSING : this.buffer.getInt(this.record(this.idAt(slot)));
+            }
+        } finally {
+            this.structure.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if the username is longer than
+     * Ranking.MAX_USERNAME_LENGTH.
+     */
+    @Override
+    int raiseFrom(String username, int score) throws IOException {
+        if (username.length() > Ranking.MAX_USERNAME_LENGTH) {
+            throw new IllegalArgumentException("Username longer than " + Ranking.MAX_USERNAME_LENGTH
+                    + " characters: " + username);
+        }
+        int hash = ScoreStore.hash(username);
+        while (true) {
+            this.structure.readLock().lock();
+            try {
+                synchronized (this.lock(hash)) {
+                    int slot = this.find(username, hash);
+                    if (slot >= 0) {
+                        int record = this.record(this.idAt(slot));
+                        int previous = this.buffer.getInt(record);
+                        if (previous < score) {
+                            this.buffer.putInt(record, score);
+                        }
+                        return previous;
+                    }
+                    synchronized (this.insertLock) {
+                        if (this.count < this.capacity / 2) {
+                            this.insert(username, hash, score);
+                            return ScoreStore.MISSING;
+                        }
+                    }
+                }
+            } finally {
+                this.structure.readLock().unlock();
+            }
+            this.grow();
+        }
+    }
+
+    /**
+     * Writes a new record and links it in the table. The free slot is searched
+     * again, since other users may have been inserted.
+     */
+    private void insert(String username, int hash, int score) {
+        int id = this.count;
+        int record = this.record(id);
+        this.buffer.putInt(record, score);
+        this.buffer.putShort(record + 4, (short) username.length());
+        for (int i = 0; i < username.length(); i++) {
+            this.buffer.putChar(record + 6 + 2 * i, username.charAt(i));
+        }
+        this.buffer.putInt(MappedScoreStore.HEADER_SIZE + (-this.find(username, hash) - 1) * 4, id + 1);
+        this.buffer.putInt(12, id + 1);
+        this.count = id + 1;
+    }
+
+    /**
+     * Doubles the capacity, if no other thread did it.
+     *
+     * @throws IOException
+     */
+    private void grow() throws IOException {
+        this.structure.writeLock().lock();
+        try {
+            if (this.count >= this.capacity / 2) {
+                MappedScoreStore.create(this.file, this.capacity * 2, this);
+                this.map();
+            }
+        } finally {
+            this.structure.writeLock().unlock();
+        }
+    }
+
+    @Override
+    int size() {
+        return this.count;
+    }
+
+    @Override
+    void visit(Visitor visitor) {
+        this.structure.readLock().lock();
+        try {
+            for (int id = 0; id < this.count; id++) {
+                visitor.visit(this.readUsername(id), this.buffer.getInt(this.record(id)));
+            }
+        } finally {
+            this.structure.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visits the users whose highscore is between two scores, and counts the
+     * users above them. Only the visited usernames are read, the other
+     * records are skipped by their score.
+     *
+     * @param lowest lowest score visited
+     * @param highest highest score visited
+     * @param visitor receives each username and highscore
+     * @return amount of users with a score higher than highest.
+     */
+    int visit(int lowest, int highest, Visitor visitor) {
+        this.structure.readLock().lock();
+        try {
+            int above = 0;
+            for (int id = 0; id < this.count; id++) {
+                int score = this.buffer.getInt(this.record(id));
+                if (score > highest) {
+                    above++;
+                } else if (score >= lowest) {
+                    visitor.visit(this.readUsername(id), score);
+                }
+            }
+            return above;
+        } finally {
+            this.structure.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the users ranked before a (score, username) key, reading the
+     * records in place: O(users), without creating any object.
+     *
+     * @param score the key's score
+     * @param username the key's username, or null to count only the users
+     * with a higher score
+     * @return amount of users with a higher score, or the same score and a
+     * username before the given one.
+     */
+    int countBefore(int score, String username) {
+        this.structure.readLock().lock();
+        try {
+            int before = 0;
+            for (int id = 0; id < this.count; id++) {
+                int userScore = this.buffer.getInt(this.record(id));
+                if (userScore > score || (userScore == score && username != null
+                        && this.compareRecord(id, username) < 0)) {
+                    before++;
+                }
+            }
+            return before;
+        } finally {
+            this.structure.readLock().unlock();
+        }
+    }
+
+    /**
+     * The id of a user is its record's number.
+     */
+    @Override
+    int id(String username) {
+        if (username.length() > Ranking.MAX_USERNAME_LENGTH) {
+            return ScoreStore.MISSING;
+        }
+        int hash = ScoreStore.hash(username);
+        this.structure.readLock().lock();
+        try {
+            synchronized (this.lock(hash)) {
+                int slot = this.find(username, hash);
+                return slot < 0 ? ScoreStore.MISSING : this.idAt(slot);
+            }
+        } finally {
+            this.structure.readLock().unlock();
+        }
+    }
+
+    @Override
+    String username(int id) {
+        this.structure.readLock().lock();
+        try {
+            return this.readUsername(id);
+        } finally {
+            this.structure.readLock().unlock();
+        }
+    }
+
+    @Override
+    int compareUsername(int id, String username) {
+        this.structure.readLock().lock();
+        try {
+            return this.compareRecord(id, username);
+        } finally {
+            this.structure.readLock().unlock();
+        }
+    }
+
+    private int compareRecord(int id, String username) {
+        int record = this.record(id);
+        int length = this.buffer.getShort(record + 4);
+        for (int i = 0; i < Math.min(length, username.length()); i++) {
+            char c = this.buffer.getChar(record + 6 + 2 * i);
+            if (c != username.charAt(i)) {
+                return c - username.charAt(i);
+            }
+        }
+        return length - username.length();
+    }
+
+    @Override
+    void force() throws IOException {
+        this.structure.readLock().lock();
+        try {
+            this.buffer.force();
+        } finally {
+            this.structure.readLock().unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the slot of the user, or -(free slot + 1) if it's unknown.
+     */
+    private int find(String username, int hash) {
+        int mask = this.capacity - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int entry = this.buffer.getInt(MappedScoreStore.HEADER_SIZE + slot * 4);
+            if (entry == 0 || entry > this.count) { //A record not counted was cut by a crash
+                return -(slot + 1);
+            }
+            if (this.matches(entry - 1, username)) {
+                return slot;
+            }
+        }
+    }
+
+    private int idAt(int slot) {
+        return this.buffer.getInt(MappedScoreStore.HEADER_SIZE + slot * 4) - 1;
+    }
+
+    private int record(int id) {
+        return MappedScoreStore.HEADER_SIZE + this.capacity * 4 + id * MappedScoreStore.RECORD_SIZE;
+    }
+
+    private boolean matches(int id, String username) {
+        int record = this.record(id);
+        int length = this.buffer.getShort(record + 4);
+        if (length != username.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (this.buffer.getChar(record + 6 + 2 * i) != username.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readUsername(int id) {
+        int record = this.record(id);
+        char[] username = new char[this.buffer.getShort(record + 4)];
+        for (int i = 0; i < username.length; i++) {
+            username[i] = this.buffer.getChar(record + 6 + 2 * i);
+        }
+        return new String(username);
+    }
+
+    /**
+     *
+     * @return the same hash of the username, without creating the String.
+     */
+    private int nameHash(int id) {
+        int record = this.record(id);
+        int length = this.buffer.getShort(record + 4);
+        int stringHash = 0;
+        for (int i = 0; i < length; i++) {
+            stringHash = 31 * stringHash + this.buffer.getChar(record + 6 + 2 * i);
+        }
+        return ScoreStore.mix(stringHash);
+    }
+
+    private Object lock(int hash) {
+        return this.locks[hash & (MappedScoreStore.LOCKS - 1)];
+    }
+}
@@ -1,12 +1,40 @@
 package Server.Util.Engine;
 
 import Server.Util.Exceptions.RankingLoadException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.Properties;
+import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Game ranking' implementation. Implements Singleton design pattern to threat
@@ -17,146 +45,1405 @@ import java.util.Properties;
  */
 public class Ranking {
 
-    private Properties generalRanking; //General ranking' file.
-    private Properties top3; //Top 3 users' file, always sorted.
-    private final RankingItem[] topUsers; //Top 3 users.
-    private static Ranking instance; //Singleton instance.
+    private static final int TOP_SIZE = 3; //Amount of users in the top.
+    public static final long DEFAULT_FLUSH_INTERVAL = 5000; //Milliseconds between flushes.
+    public static final int DEFAULT_FLUSH_THRESHOLD = 100; //Changes that force a flush.
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10000; //Journal records that force a compaction.
+    public static final int MAX_USERNAME_LENGTH = 32; //Longest username ranked, by every backend.
+    public static final int MAX_RANGE = 100; //Maximum amount of users of a range query.
+    public static final int ALL_TIME = 0; //Ranking windows, see getWindowRange.
+    public static final int DAILY = 1;
+    public static final int WEEKLY = 2;
+    public static final String PROPERTIES_BACKEND = "properties"; //ranking.data and top3.data.
+    public static final String MAPPED_BACKEND = "mapped"; //Binary file mapped in memory.
+    public static final int DEFAULT_SCORE_QUEUE_CAPACITY = 4096; //Scores waiting for the writer.
+    public static final int MAPPED_INDEX_CAPACITY = 1000; //Best users indexed on the heap by the mapped backend.
+    private static final int WRITER_BATCH = 256; //Maximum scores applied between two syncs.
+    private static final long WRITER_IDLE_WAIT = 100000000; //Nanoseconds the writer sleeps without scores.
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String SHARDS_SUFFIX = ".shards"; //Amount of shards of the files.
+    private static final String SPLIT_SUFFIX = ".split"; //Every user, while the files are split.
+    private static final String DAILY_SUFFIX = ".daily"; //Scores of the current day.
+    private static final String WEEKLY_SUFFIX = ".weekly"; //Scores of the current week.
+    private static final Ranking INSTANCE = new Ranking(); //Singleton instance.
+    private static final Comparator<RankingItem> ORDER = new Comparator<RankingItem>() { //By score (descending) and username.
+        @Override
+        public int compare(RankingItem a, RankingItem b) {
+            int byScore = Integer.compare(b.getScore().intValue(), a.getScore().intValue());
+            return byScore != 0 ? byScore : a.getUsername().compareTo(b.getUsername());
+        }
+    };
+
+    private ScoreStore generalRanking; //Highscore of each user, replaced only before the load.
+    private MappedScoreStore mappedRanking; //generalRanking in the mapped backend, or null.
+    private RankingIndex index; //Users of generalRanking, sorted, replaced with it.
+    private final ScoreHistogram histogram; //Every user of generalRanking by highscore.
+    private volatile UsernameFilter knownUsers; //Every user of the store, and a few unknown ones; unused if mapped.
+    private final ReentrantReadWriteLock filterLock; //Adds share, a rebuild doesn't, so it can't lose them.
+    private final AtomicLong generation; //Incremented by each change of a highscore.
+    private final AtomicLong topGeneration; //Incremented by each change of the first MAX_RANGE positions.
+    private final LeaderboardWindow dailyRanking; //Scores of the current day.
+    private final LeaderboardWindow weeklyRanking; //Scores of the current week.
+    private volatile TopSnapshot topUsers; //Top 3 users, replaced as a whole.
+    private final Object topLock; //Taken only to replace the top 3.
+    private final Object storeLock; //Serializes the file writes.
+    private String rankingFile; //General ranking' file.
+    private String top3File; //Top 3 users' file.
+    private int shards; //Files the general ranking is split in.
+    private ShardedScoreStore shardedRanking; //generalRanking by shard, null with the mapped backend.
+    private File[] journalFiles; //Highscores changed after each shard's snapshot.
+    private int[] journalRecords; //Records appended to each journal since its snapshot.
+    private final Set<String> changedUsers; //Users changed since the last flush.
+    private final AtomicInteger changes; //Highscores changed since the last flush.
+    private final AtomicBoolean topChanged; //True if the top 3 changed since the last flush.
+    private final AtomicBoolean windowsChanged; //True if the daily or weekly ranking changed since the last flush.
+    private final Runnable flushTask;
+    private ScheduledExecutorService flusher; //Writes the files in background.
+    private long flushInterval;
+    private int flushThreshold;
+    private int compactionThreshold;
+    private boolean durableCommits; //True if a refresh waits for its flush.
+    private final AtomicLong changeCount; //Changes made, the last one is the newest ticket.
+    private volatile long committedCount; //Changes saved to the disk.
+    private long failedCount; //Changes whose flush failed, guarded by commitLock.
+    private IOException commitFailure; //Why they failed, guarded by commitLock.
+    private long queueCommitted; //Queued scores applied and saved, guarded by commitLock.
+    private long queueFailedFrom; //Queued scores of the last failed batch, from it to queueFailed, guarded by commitLock.
+    private long queueFailed;
+    private final AtomicBoolean flushRequested; //True if a flush for a waiting refresh is scheduled.
+    private final ReentrantLock commitLock; //Not a monitor, so virtual threads can wait unpinned.
+    private final Condition commitDone;
+    private int scoreQueueCapacity; //0 if the sessions apply their scores.
+    private volatile ScoreQueue scoreQueue; //Scores waiting for the writer, null without a writer.
+    private final Object writerLock; //Held while scores are drained.
+    private final ScoreQueue.Handler scoreHandler; //Applies a drained score.
+    private int batchChanges; //Highscores changed by the batch being drained.
 
     /**
      * Private constructor, part of the implementation of Singleton Design
-     * Pattern. Also, loads the top3 and ranking files.
+     * Pattern.
+     */
+    private Ranking() {
+        this.generalRanking = new HeapScoreStore();
+        this.index = new RankingIndex(this.generalRanking);
+        this.histogram = new ScoreHistogram();
+        this.knownUsers = new UsernameFilter(UsernameFilter.MIN_CAPACITY);
+        this.filterLock = new ReentrantReadWriteLock();
+        this.generation = new AtomicLong();
+        this.topGeneration = new AtomicLong();
+        this.dailyRanking = new LeaderboardWindow(1);
+        this.weeklyRanking = new LeaderboardWindow(7);
+        this.topUsers = new TopSnapshot(Ranking.emptyTop());
+        this.topLock = new Object();
+        this.storeLock = new Object();
+        this.changedUsers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        this.changes = new AtomicInteger();
+        this.topChanged = new AtomicBoolean();
+        this.windowsChanged = new AtomicBoolean();
+        this.flushInterval = Ranking.DEFAULT_FLUSH_INTERVAL;
+        this.flushThreshold = Ranking.DEFAULT_FLUSH_THRESHOLD;
+        this.compactionThreshold = Ranking.DEFAULT_COMPACTION_THRESHOLD;
+        this.shards = 1;
+        this.changeCount = new AtomicLong();
+        this.flushRequested = new AtomicBoolean();
+        this.commitLock = new ReentrantLock();
+        this.commitDone = this.commitLock.newCondition();
+        this.writerLock = new Object();
+        this.scoreHandler = new ScoreQueue.Handler() {
+            @Override
+            public void score(String username, int score) throws IOException {
+                if (Ranking.this.applyScore(username, score)) {
+                    Ranking.this.batchChanges++;
+                }
+            }
+        };
+        this.flushTask = new Runnable() {
+            @Override
+            public void run() {
+                Ranking.this.flushRequested.set(false); //Later waiters need another flush
+                try {
+                    Ranking.this.flush();
+                } catch (IOException ex) {
+                    System.err.println("ERROR: " + ex);
+                }
+            }
+        };
+    }
+
+    /**
+     * Sets how often the files are saved. Must be called before loadRankings.
+     * A change only marks its user; a background thread saves the changes
+     * every flush interval, or as soon as the flush threshold is reached.
+     *
+     * @param flushInterval milliseconds between two flushes
+     * @param flushThreshold amount of changes that forces a flush
+     * @param compactionThreshold amount of journal records that forces a new
+     * snapshot
+     */
+    public synchronized void setWriteBehind(long flushInterval, int flushThreshold, int compactionThreshold) {
+        this.flushInterval = flushInterval;
+        this.flushThreshold = Math.max(1, flushThreshold);
+        this.compactionThreshold = Math.max(1, compactionThreshold);
+    }
+
+    /**
+     * Sets in how many files the general ranking is split. Must be called
+     * before loadRankings. Shard i is kept in ranking file + "." + i, with its
+     * own journal. If the files are split in another amount of shards,
+     * loadRankings splits them again.
+     *
+     * Only the storage is sharded: the highscores, the files, the journals
+     * and the load. The index of positions is still one for every user, so
+     * the range and position queries don't merge the shards, and its updates
+     * aren't spread among them.
+     *
+     * @param shards amount of files, 1 to keep the whole ranking in the
+     * ranking file
+     */
+    public synchronized void setShards(int shards) {
+        this.shards = Math.max(1, shards);
+    }
+
+    /**
+     * Sets if refreshUserHighscore and submitUserScore wait for their change
+     * to be synced to the disk. Must be called before loadRankings. The
+     * refreshes waiting together are saved by the same flush, and the queued
+     * scores by their batch's flush, so they share one sync.
+     *
+     * @param durableCommits true to wait, false to return at once
+     */
+    public synchronized void setDurableCommits(boolean durableCommits) {
+        this.durableCommits = durableCommits;
+    }
+
+    /**
+     * Sets the capacity of the queue of scores applied by the writer thread.
+     * Must be called before loadRankings.
+     *
+     * @param capacity amount of queued scores, or 0 to let each session apply
+     * its scores
      */
-    private Ranking() throws RankingLoadException {
-        this.topUsers = new RankingItem[3];
+    public synchronized void setScoreQueue(int capacity) {
+        this.scoreQueueCapacity = Math.max(0, capacity);
     }
-    
+
     /**
-     * Loads the rankings.
+     * Loads the rankings: the general ranking's snapshot, then the changes of
+     * its journal.
      * @param rankingFile location of the general ranking file.
      * @param top3File location of the top3 ranking file
      * @return true if the rakings were loaded, false otherwise.
      * @throws RankingLoadException
      */
-    public boolean loadRankings(String rankingFile, String top3File) throws RankingLoadException {
-        if(this.generalRanking != null || this.top3 != null){
+    public synchronized boolean loadRankings(String rankingFile, String top3File) throws RankingLoadException {
+        if (this.rankingFile != null) {
+            return false;
+        }
+        Properties top3 = Ranking.load(top3File);
+        this.shardedRanking = new ShardedScoreStore(this.shards);
+        this.generalRanking = this.shardedRanking;
+        this.index = new RankingIndex(this.generalRanking);
+        int stored = Ranking.storedShards(rankingFile);
+        int[] records = this.importRanking(rankingFile, stored);
+        this.journalFiles = new File[this.shards];
+        for (int shard = 0; shard < this.shards; shard++) {
+            this.journalFiles[shard] = new File(Ranking.shardFile(rankingFile, shard, this.shards) + Ranking.JOURNAL_SUFFIX);
+        }
+        if (stored != this.shards || new File(rankingFile + Ranking.SPLIT_SUFFIX).exists()
+                || (stored > 1 && !new File(rankingFile + Ranking.SHARDS_SUFFIX).exists())) { //Split by older versions
+            try {
+                this.split(rankingFile, stored);
+            } catch (IOException ex) {
+                throw new RankingLoadException(rankingFile);
+            }
+            records = new int[this.shards];
+        }
+        this.journalRecords = records;
+        this.indexUsers();
+        this.loadTop3(top3);
+        this.loadWindows(rankingFile);
+        this.rankingFile = rankingFile;
+        this.top3File = top3File;
+        this.startFlusher();
+        this.startScoreWriter();
+        return true;
+    }
+
+    /**
+     * Loads the ranking kept in a binary file mapped in memory, instead of the
+     * ranking and top3 files. If the binary file doesn't exist, it's created
+     * with the users of the general ranking file and its journal. A new
+     * highscore is written in place, and a flush only syncs the file.
+     *
+     * So the heap doesn't grow with the amount of users, only the best
+     * MAPPED_INDEX_CAPACITY users are indexed, and there's no filter of known
+     * users. The positions after them are counted in the file, and the ranges
+     * after them are read from the file, between the scores the histogram
+     * gives. The daily and weekly rankings are still kept on the heap.
+     *
+     * @param mappedFile location of the binary file
+     * @param importFile location of the general ranking file
+     * @return true if the ranking was loaded, false otherwise.
+     * @throws RankingLoadException
+     */
+    public synchronized boolean loadMappedRanking(String mappedFile, String importFile) throws RankingLoadException {
+        if (this.rankingFile != null) {
             return false;
         }
-        this.generalRanking = new Properties();
-        this.top3 = new Properties();
+        File file = new File(mappedFile);
+        boolean created = !file.exists();
         try {
-            this.generalRanking.load(new FileInputStream(rankingFile));
+            this.mappedRanking = MappedScoreStore.open(file);
+            this.generalRanking = this.mappedRanking;
+            this.index = new RankingIndex(this.generalRanking, Ranking.MAPPED_INDEX_CAPACITY);
+            int stored = Ranking.storedShards(importFile);
+            if (created && (new File(Ranking.shardFile(importFile, 0, stored)).exists()
+                    || new File(importFile + Ranking.SPLIT_SUFFIX).exists())) {
+                this.importRanking(importFile, stored);
+                this.generalRanking.force();
+            }
         } catch (IOException ex) {
+            throw new RankingLoadException(mappedFile);
+        }
+        this.indexUsers();
+        RankingItem[] top = Ranking.emptyTop();
+        RankingItem[] best = this.index.range(0, Ranking.TOP_SIZE);
+        System.arraycopy(best, 0, top, 0, best.length);
+        this.topUsers = new TopSnapshot(top);
+        this.loadWindows(mappedFile);
+        this.rankingFile = mappedFile;
+        this.startFlusher();
+        this.startScoreWriter();
+        return true;
+    }
+
+    /**
+     * Loads the users of the general ranking's shards and of their journals,
+     * as the files are split (see storedShards), each shard in its own
+     * thread. While a split is unfinished, its full snapshot is loaded
+     * instead.
+     *
+     * @param rankingFile location of the general ranking file
+     * @param stored amount of shards of the files
+     * @return amount of journal records of each shard.
+     * @throws RankingLoadException if a file can't be read.
+     */
+    private int[] importRanking(final String rankingFile, final int stored) throws RankingLoadException {
+        if (new File(rankingFile + Ranking.SPLIT_SUFFIX).exists()) {
+            this.importShard(rankingFile + Ranking.SPLIT_SUFFIX, null);
+            return new int[stored];
+        }
+        if (stored == 1) {
+            return new int[]{this.importShard(rankingFile, new File(rankingFile + Ranking.JOURNAL_SUFFIX))};
+        }
+
+        int[] records = new int[stored];
+        ExecutorService loaders = Executors.newFixedThreadPool(
+                Math.min(stored, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<Integer>> loaded = new ArrayList<>();
+            for (int shard = 0; shard < stored; shard++) {
+                final String shardFile = Ranking.shardFile(rankingFile, shard, stored);
+                loaded.add(loaders.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws RankingLoadException {
+                        return Ranking.this.importShard(shardFile, new File(shardFile + Ranking.JOURNAL_SUFFIX));
+                    }
+                }));
+            }
+            for (int shard = 0; shard < stored; shard++) {
+                records[shard] = loaded.get(shard).get();
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RankingLoadException) {
+                throw (RankingLoadException) ex.getCause();
+            }
             throw new RankingLoadException(rankingFile);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RankingLoadException(rankingFile);
+        } finally {
+            loaders.shutdown();
+        }
+        return records;
+    }
+
+    /**
+     * Finds in how many shards the general ranking's files are split: the
+     * amount saved by the last split, or, for files split before it was
+     * saved, the amount of shard files.
+     *
+     * @param rankingFile location of the general ranking file
+     * @return amount of shards, 1 if the ranking isn't split.
+     * @throws RankingLoadException if the amount can't be read.
+     */
+    private static int storedShards(String rankingFile) throws RankingLoadException {
+        if (new File(rankingFile + Ranking.SHARDS_SUFFIX).exists()) {
+            try {
+                return Integer.parseInt(Ranking.load(rankingFile + Ranking.SHARDS_SUFFIX).getProperty("shards"));
+            } catch (NumberFormatException ex) {
+                throw new RankingLoadException(rankingFile + Ranking.SHARDS_SUFFIX);
+            }
+        }
+        int shards = 0;
+        while (new File(rankingFile + "." + shards).exists()) {
+            shards++;
         }
+        return Math.max(1, shards);
+    }
+
+    /**
+     * Splits the loaded general ranking in the configured amount of shards.
+     * First every user is saved in one snapshot (ranking file + ".split"),
+     * which is loaded instead of the shards until the split ends, so a crash
+     * never loses a user moved to another shard. Then the shards are written,
+     * the journals and the files of the old split are deleted and the amount
+     * of shards is saved.
+     *
+     * @param rankingFile location of the general ranking file
+     * @param stored amount of shards of the files
+     * @throws IOException
+     */
+    private void split(String rankingFile, int stored) throws IOException {
+        final Properties all = new Properties();
+        this.generalRanking.visit(new ScoreStore.Visitor() {
+            @Override
+            public void visit(String username, int score) {
+                all.setProperty(username, "" + score);
+            }
+        });
+        Ranking.store(all, rankingFile + Ranking.SPLIT_SUFFIX);
+        for (int shard = 0; shard < this.shards; shard++) {
+            Ranking.store(this.shardSnapshot(shard), Ranking.shardFile(rankingFile, shard, this.shards));
+        }
+        Files.deleteIfExists(new File(rankingFile + Ranking.JOURNAL_SUFFIX).toPath());
+        if (this.shards > 1) {
+            Files.deleteIfExists(new File(rankingFile).toPath());
+        }
+        for (int shard = 0; shard < Math.max(stored, this.shards); shard++) {
+            Files.deleteIfExists(new File(rankingFile + "." + shard + Ranking.JOURNAL_SUFFIX).toPath());
+            if (this.shards == 1 || shard >= this.shards) {
+                Files.deleteIfExists(new File(rankingFile + "." + shard).toPath());
+            }
+        }
+        Properties shardCount = new Properties();
+        shardCount.setProperty("shards", "" + this.shards);
+        Ranking.store(shardCount, rankingFile + Ranking.SHARDS_SUFFIX);
+        Files.delete(new File(rankingFile + Ranking.SPLIT_SUFFIX).toPath());
+    }
+
+    /**
+     * Loads the users of a snapshot and of its journal.
+     *
+     * @param snapshotFile location of the snapshot
+     * @param journalFile location of the snapshot's journal, or null
+     * @return amount of journal records.
+     * @throws RankingLoadException if a file can't be read.
+     */
+    private int importShard(String snapshotFile, File journalFile) throws RankingLoadException {
+        Properties ranking = Ranking.load(snapshotFile);
         try {
-            this.top3.load(new FileInputStream(top3File));
+            for (String username : ranking.stringPropertyNames()) {
+                this.importScore(username, Integer.parseInt(ranking.getProperty(username)));
+            }
         } catch (IOException ex) {
-            throw new RankingLoadException(top3File);
+            throw new RankingLoadException(snapshotFile);
         }
-        this.loadTop3();
-        return true;
+        return journalFile == null ? 0 : this.replayJournal(journalFile);
+    }
+
+    /**
+     * Puts a loaded score in the store. A username the store can't keep (too
+     * long for the mapped file) is reported and skipped.
+     *
+     * @param username of the user
+     * @param score the user's highscore
+     * @throws IOException if the store's file can't be written.
+     */
+    private void importScore(String username, int score) throws IOException {
+        try {
+            this.generalRanking.raise(username, score);
+        } catch (IllegalArgumentException ex) {
+            System.err.println("ERROR: " + ex.getMessage() + ", not loaded");
+        }
+    }
+
+    /**
+     *
+     * @param username a username
+     * @return true if the username can be ranked: it isn't null and has at
+     * most MAX_USERNAME_LENGTH characters.
+     */
+    public static boolean isValidUsername(String username) {
+        return username != null && username.length() <= Ranking.MAX_USERNAME_LENGTH;
+    }
+
+    /**
+     *
+     * @param rankingFile location of the general ranking file
+     * @param shard number of the shard
+     * @param shards amount of shards
+     * @return location of the shard's snapshot.
+     */
+    private static String shardFile(String rankingFile, int shard, int shards) {
+        return shards == 1 ? rankingFile : rankingFile + "." + shard;
     }
 
     /**
-     * Returns the current instance, if it doesn't exists, creates and returns a
-     * new one.
+     * Loads the daily and weekly rankings saved by the last flush, if they're
+     * still of the current day and week.
+     *
+     * @param rankingFile location of the general ranking file, the windows'
+     * files are next to it
+     * @throws RankingLoadException if a file can't be read.
+     */
+    private void loadWindows(String rankingFile) throws RankingLoadException {
+        if (new File(rankingFile + Ranking.DAILY_SUFFIX).exists()) {
+            this.dailyRanking.restore(Ranking.load(rankingFile + Ranking.DAILY_SUFFIX));
+        }
+        if (new File(rankingFile + Ranking.WEEKLY_SUFFIX).exists()) {
+            this.weeklyRanking.restore(Ranking.load(rankingFile + Ranking.WEEKLY_SUFFIX));
+        }
+    }
+
+    /**
+     * Puts every loaded user in the index, the histogram and, unless the
+     * ranking is mapped, the filter of known users.
+     */
+    private void indexUsers() {
+        final UsernameFilter filter = this.mappedRanking != null ? null
+                : new UsernameFilter(this.generalRanking.size() * 2);
+        this.generalRanking.visit(new ScoreStore.Visitor() {
+            @Override
+            public void visit(String username, int score) {
+                Ranking.this.index.raise(username, score);
+                Ranking.this.histogram.add(score);
+                if (filter != null) {
+                    filter.add(username);
+                }
+            }
+        });
+        if (filter != null) {
+            this.knownUsers = filter;
+        }
+    }
+
+    /**
+     * Adds a user to the filter of known users, after the user is stored. A
+     * full filter is replaced by one twice as big, filled from the store; the
+     * adds wait for the rebuild, so a user stored meanwhile is added to the new
+     * filter.
+     *
+     * @param username of a stored user
+     */
+    private void rememberUser(String username) {
+        if (this.mappedRanking != null) { //The file is searched instead
+            return;
+        }
+        boolean full;
+        this.filterLock.readLock().lock();
+        try {
+            this.knownUsers.add(username);
+            full = this.knownUsers.isFull();
+        } finally {
+            this.filterLock.readLock().unlock();
+        }
+        if (!full) {
+            return;
+        }
+        this.filterLock.writeLock().lock();
+        try {
+            if (this.knownUsers.isFull()) { //Not rebuilt by another thread meanwhile
+                final UsernameFilter filter = new UsernameFilter(this.knownUsers.getCapacity() * 2);
+                this.generalRanking.visit(new ScoreStore.Visitor() {
+                    @Override
+                    public void visit(String knownUsername, int score) {
+                        filter.add(knownUsername);
+                    }
+                });
+                this.knownUsers = filter;
+            }
+        } finally {
+            this.filterLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the journal's records to the loaded snapshot. A user may have
+     * many records, the highest score is kept. A last line without its line
+     * terminator was cut by a crash while it was appended, so it's ignored:
+     * its change was never committed.
+     *
+     * @param journalFile location of the journal
+     * @return amount of records.
+     * @throws RankingLoadException if the journal can't be read.
+     */
+    private int replayJournal(File journalFile) throws RankingLoadException {
+        if (!journalFile.exists()) {
+            return 0;
+        }
+        String content;
+        try {
+            content = new String(Files.readAllBytes(journalFile.toPath()), StandardCharsets.ISO_8859_1);
+        } catch (IOException ex) {
+            throw new RankingLoadException(journalFile.getPath());
+        }
+        int records = 0;
+        try {
+            for (String line : content.substring(0, content.lastIndexOf('\n') + 1).split("\n")) {
+                Properties record = new Properties();
+                record.load(new StringReader(line)); //Unescapes the line as Properties.store escaped it
+                for (String username : record.stringPropertyNames()) {
+                    try {
+                        this.importScore(username, Integer.parseInt(record.getProperty(username)));
+                        records++;
+                    } catch (NumberFormatException ex) { //Not a record
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new RankingLoadException(journalFile.getPath());
+        }
+        return records;
+    }
+
+    /**
+     * Starts the background thread that saves the files, and the shutdown
+     * hook that saves the last changes.
+     */
+    private void startFlusher() {
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread flusherThread = new Thread(task, "ranking-flusher");
+                flusherThread.setDaemon(true);
+                return flusherThread;
+            }
+        });
+        this.flusher.scheduleWithFixedDelay(this.flushTask, this.flushInterval,
+                this.flushInterval, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Ranking.this.drainScores(); //The queued scores are saved too
+                } catch (IOException ex) {
+                    System.err.println("ERROR: " + ex);
+                }
+                Ranking.this.flushTask.run();
+            }
+        }, "ranking-shutdown-flush"));
+    }
+
+    /**
+     * Starts the thread that applies the queued scores, if there's a queue.
+     */
+    private void startScoreWriter() {
+        if (this.scoreQueueCapacity == 0) {
+            return;
+        }
+        final ScoreQueue queue = new ScoreQueue(this.scoreQueueCapacity);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        if (Ranking.this.drainScores() == 0) {
+                            queue.await(Ranking.WRITER_IDLE_WAIT);
+                        }
+                    } catch (IOException ex) {
+                        System.err.println("ERROR: " + ex);
+                    }
+                }
+            }
+        }, "ranking-writer");
+        writer.setDaemon(true);
+        this.scoreQueue = queue;
+        writer.start();
+    }
+
+    /**
+     * Applies a batch of queued scores. With durable commits, the batch is
+     * synced before returning; otherwise its changes count to the flush
+     * threshold. Then the sessions waiting for the batch's scores are woken
+     * up, and fail if the batch failed.
+     *
+     * @return amount of scores drained.
+     * @throws IOException if a score can't be stored or the batch can't be
+     * synced.
+     */
+    private int drainScores() throws IOException {
+        ScoreQueue queue = this.scoreQueue;
+        if (queue == null) {
+            return 0;
+        }
+        synchronized (this.writerLock) {
+            this.batchChanges = 0;
+            int drained;
+            try {
+                try {
+                    drained = queue.drain(this.scoreHandler, Ranking.WRITER_BATCH);
+                } finally {
+                    this.changesApplied(this.batchChanges);
+                }
+                if (this.batchChanges > 0 && this.durableCommits) {
+                    this.flush();
+                }
+            } catch (IOException ex) {
+                this.failQueued(queue.head(), ex);
+                throw ex;
+            }
+            this.commitQueued(queue.head());
+            return drained;
+        }
+    }
+
+    /**
+     * Reads a properties file.
+     *
+     * @param file location of the file
+     * @return the file's properties
+     * @throws RankingLoadException if the file can't be read.
+     */
+    private static Properties load(String file) throws RankingLoadException {
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(file)) {
+            properties.load(input);
+        } catch (IOException ex) {
+            throw new RankingLoadException(file);
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the Ranking instance.
      *
      * @return a Ranking instance
      * @throws Server.Util.Exceptions.RankingLoadException
      */
     public static Ranking instance() throws RankingLoadException  {
-        if (Ranking.instance == null) {
-            Ranking.instance = new Ranking();
-        }
-        return Ranking.instance;
+        return Ranking.INSTANCE;
     }
 
     /**
-     * Loads the top 3 from the file.
+     *
+     * @return a top filled with "empty - 0" entries.
+     */
+    private static RankingItem[] emptyTop() {
+        RankingItem[] top = new RankingItem[Ranking.TOP_SIZE];
+        Arrays.fill(top, new RankingItem("empty", 0));
+        return top;
+    }
+
+    /**
+     * Loads the top 3 from the file. If the entries < 3, the ranking is
+     * completed with "empty - 0" entries.
+     *
+     * @param top3 the top 3 file's entries
      */
-    private void loadTop3() {
-        Enumeration<?> propertyNames = this.top3.propertyNames();
-        
-        /*Loads all entries of the top3.data file. If the entries < 3, the ranking
-         *is completed with "empty - 0" entries.*/
-        for (int i = 0; propertyNames.hasMoreElements() || i < 3; i++) {
-            String username = propertyNames.nextElement().toString();
-            String score = this.generalRanking.getProperty(username);
-            if (score == null) {
-                score = "0";
-                username = "empty";
+    private void loadTop3(Properties top3) {
+        RankingItem[] top = Ranking.emptyTop();
+        int i = 0;
+        for (String username : top3.stringPropertyNames()) {
+            int score = this.generalRanking.get(username);
+            if (score != ScoreStore.MISSING && i < Ranking.TOP_SIZE) {
+                top[i++] = new RankingItem(username, score);
             }
-            this.topUsers[i] = new RankingItem(username, Integer.parseInt(score));
         }
-        Arrays.sort(this.topUsers);
+        Arrays.sort(top);
+        this.topUsers = new TopSnapshot(top);
     }
 
     /**
      * Return the current top 3 users.
      *
-     * @return
+     * @return a copy of the top 3.
      */
     public RankingItem[] getTop3() {
+        return this.topUsers.toArray();
+    }
+
+    /**
+     * Return the current top 3 snapshot, with its encoded answer. The
+     * snapshot is only replaced when a score gets into the top 3, so it's
+     * read without a lock.
+     *
+     * @return the top 3, never changed.
+     */
+    public TopSnapshot getTopSnapshot() {
         return this.topUsers;
     }
 
     /**
-     * Get a user's highscore.
+     * Gets the best users.
+     *
+     * @param amount of users, up to MAX_RANGE
+     * @return the best users, sorted.
+     */
+    public RankingItem[] getTop(int amount) {
+        return this.getRange(0, amount);
+    }
+
+    /**
+     * Gets the users from a position of the ranking.
+     *
+     * @param offset amount of users skipped, position - 1
+     * @param limit amount of users, up to MAX_RANGE
+     * @return the users, sorted.
+     */
+    public RankingItem[] getRange(int offset, int limit) {
+        limit = Math.min(limit, Ranking.MAX_RANGE);
+        if (this.mappedRanking != null && this.index.isFull() && (long) offset + limit > this.index.size()) {
+            return this.scanRange(offset, limit);
+        }
+        return this.index.range(offset, limit);
+    }
+
+    /**
+     * Reads from the mapped file the users of positions after the indexed
+     * ones. Only the users whose scores are in the histogram's buckets of the
+     * positions are read and sorted. If the histogram is behind the file, a
+     * wider range of scores is read.
+     *
+     * @param offset amount of users skipped, position - 1
+     * @param limit amount of users
+     * @return the users, sorted.
+     */
+    private RankingItem[] scanRange(int offset, int limit) {
+        int[] scores = this.histogram.scoreRange(offset, limit);
+        if (scores == null) {
+            return new RankingItem[0];
+        }
+        final List<RankingItem> users = new ArrayList<>();
+        ScoreStore.Visitor collector = new ScoreStore.Visitor() {
+            @Override
+            public void visit(String username, int score) {
+                users.add(new RankingItem(username, score));
+            }
+        };
+        int above = this.mappedRanking.visit(scores[0], scores[1], collector);
+        if (above > offset || (above + users.size() < offset + limit && scores[0] > 0)) {
+            users.clear();
+            above = this.mappedRanking.visit(Integer.MIN_VALUE,
+                    above > offset ? Integer.MAX_VALUE : scores[1], collector);
+        }
+        Collections.sort(users, Ranking.ORDER);
+        int from = offset - above;
+        if (from < 0 || from >= users.size()) {
+            return new RankingItem[0];
+        }
+        return users.subList(from, Math.min(users.size(), from + limit)).toArray(new RankingItem[0]);
+    }
+
+    /**
+     * Gets the position of a user in the ranking.
+     *
+     * @param username of the user
+     * @return the position, starting at 1, or 0 if the user isn't ranked.
+     */
+    public int getPosition(String username) {
+        int position = this.index.position(username);
+        if (position == 0 && username != null && this.mappedRanking != null && this.index.isFull()) {
+            int score = this.generalRanking.get(username); //After the indexed users, counted in the file
+            if (score != ScoreStore.MISSING) {
+                position = this.mappedRanking.countBefore(score, username) + 1;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Gets the users from a position of a ranking window.
+     *
+     * @param window ALL_TIME, DAILY or WEEKLY
+     * @param offset amount of users skipped, position - 1
+     * @param limit amount of users, up to MAX_RANGE
+     * @return the users, sorted; empty if the window is unknown.
+     */
+    public RankingItem[] getWindowRange(int window, int offset, int limit) {
+        limit = Math.min(limit, Ranking.MAX_RANGE);
+        switch (window) {
+            case Ranking.ALL_TIME:
+                return this.getRange(offset, limit);
+            case Ranking.DAILY:
+                return this.dailyRanking.range(offset, limit);
+            case Ranking.WEEKLY:
+                return this.weeklyRanking.range(offset, limit);
+        }
+        return new RankingItem[0];
+    }
+
+    /**
+     * Gets the position of a user in a ranking window.
+     *
+     * @param window ALL_TIME, DAILY or WEEKLY
+     * @param username of the user
+     * @return the position, starting at 1, or 0 if the user isn't ranked.
+     */
+    public int getWindowPosition(int window, String username) {
+        switch (window) {
+            case Ranking.ALL_TIME:
+                return this.getPosition(username);
+            case Ranking.DAILY:
+                return this.dailyRanking.position(username);
+            case Ranking.WEEKLY:
+                return this.weeklyRanking.position(username);
+        }
+        return 0;
+    }
+
+    /**
+     * The generation changes whenever a position of the ranking changes, so
+     * anything built from the ranking is valid while the generation is the
+     * same.
+     *
+     * @return the ranking's generation.
+     */
+    public long getGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * The top generation changes only when one of the first MAX_RANGE
+     * positions changes, so the best users' answers stay valid while players
+     * down the ranking improve.
+     *
+     * @return the generation of the first MAX_RANGE positions.
+     */
+    public long getTopGeneration() {
+        return this.topGeneration.get();
+    }
+
+    /**
+     * Advances the top generation after a user was put in the index, if the
+     * user is in the first MAX_RANGE positions.
+     *
+     * @param username of the user
+     */
+    private void indexChanged(String username) {
+        if (this.index.position(username) <= Ranking.MAX_RANGE) {
+            this.topGeneration.incrementAndGet();
+        }
+    }
+
+    /**
+     * Estimates how many ranked users are below a score, from a histogram of
+     * the highscores, in O(buckets) and without sorting the users.
+     *
+     * @param score a highscore
+     * @return the percentage of ranked users whose highscore is lower, from 0
+     * to 100.
+     */
+    public double getPercentile(int score) {
+        return this.histogram.percentile(score);
+    }
+
+    /**
+     * Estimates the score needed to be above a percentage of the ranked
+     * users, from a histogram of the highscores.
+     *
+     * @param percentile from 0 to 100
+     * @return the score, or 0 without ranked users.
+     */
+    public int getScoreAtPercentile(double percentile) {
+        return this.histogram.scoreAt(percentile);
+    }
+
+    /**
+     *
+     * @return amount of ranked users.
+     */
+    public int getRankedUsers() {
+        return this.generalRanking.size();
+    }
+
+    /**
+     * Get a user's highscore. An unknown user isn't added.
      * 
      * @param username of the user.
-     * @return
+     * @return the user's highscore, or 0 if the user is unknown.
      */
     public int getUserHighscore(String username) {
-        String highscore = this.generalRanking.getProperty(username);
-
-        if (highscore == null) {
-            this.generalRanking.setProperty(username, "0");
+        if (username == null
+                || (this.mappedRanking == null && !this.knownUsers.mightContain(username))) { //Surely unknown
             return 0;
         }
-        return Integer.parseInt(highscore);
+        int highscore = this.generalRanking.get(username);
+        return highscore == ScoreStore.MISSING ? 0 : highscore;
     }
 
     /**
      * Refreshes a user's highscore if the given score is higher than the actual
-     * score.
+     * score. The score is also put in the daily and weekly rankings, even if
+     * it isn't a new highscore. A score of 0 changes nothing, so only a first
+     * real score adds a user.
      * 
      * @param username of the user
      * @param score
      * @return true if the score was refreshed, false otherwise.
-     * @throws IOException
+     * @throws IOException if the score can't be stored, or its durable commit
+     * failed or was interrupted.
+     * @see #flush()
      */
     public boolean refreshUserHighscore(String username, int score) throws IOException {
+        return this.refreshUserHighscore(username, score, true);
+    }
+
+    /**
+     * Refreshes a user's highscore.
+     *
+     * @param username of the user
+     * @param score
+     * @param wait false to only schedule the durable commit instead of
+     * waiting for it
+     * @return true if the score was refreshed, false otherwise.
+     * @throws IOException if the score can't be stored, or its durable commit
+     * failed or was interrupted.
+     */
+    private boolean refreshUserHighscore(String username, int score, boolean wait) throws IOException {
+        if (!this.applyScore(username, score)) {
+            return false;
+        }
+        long ticket = this.changesApplied(1);
+        if (this.durableCommits && this.flusher != null) {
+            if (wait) {
+                this.awaitCommit(ticket);
+            } else {
+                this.requestCommit();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Submits a score to be applied by the writer thread. Until the writer
+     * applies it, the score isn't seen by the queries; the caller keeps it to
+     * answer its own highscore. With durable commits, the caller waits until
+     * the writer synced the score's batch, as refreshUserHighscore waits for
+     * its flush. Without a writer, or when the queue is full, the score is
+     * applied at once, as refreshUserHighscore does. A caller that must never
+     * block (an event loop) doesn't wait for the durable commit: the score is
+     * synced by its batch, or the commit is only scheduled.
+     *
+     * @param username of the user
+     * @param score
+     * @param wait false if the caller must not wait for the disk
+     * @throws IOException if the score can't be stored, or its durable commit
+     * failed or was interrupted.
+     */
+    public void submitUserScore(String username, int score, boolean wait) throws IOException {
+        if (score <= 0) {
+            return;
+        }
+        ScoreQueue queue = this.scoreQueue;
+        long position = queue == null ? -1 : queue.offer(username, score);
+        if (position < 0) {
+            this.refreshUserHighscore(username, score, wait);
+        } else if (wait && this.durableCommits) {
+            this.awaitQueued(position);
+        }
+    }
+
+    /**
+     * Puts a score in the store, the index, the top 3 and the windows.
+     *
+     * @param username of the user
+     * @param score
+     * @return true if the highscore was changed, false otherwise.
+     * @throws IOException if the score can't be stored.
+     */
+    private boolean applyScore(String username, int score) throws IOException {
+        if (score <= 0) {
+            return false;
+        }
+        if (this.dailyRanking.raise(username, score) | this.weeklyRanking.raise(username, score)) {
+            this.windowsChanged.set(true);
+        }
+        int previous = this.generalRanking.raiseFrom(username, score);
+        if (previous >= score) { //Refreshs only if the given score is higher than the highscore
+            return false;
+        }
+        if (previous != ScoreStore.MISSING) {
+            this.histogram.remove(previous);
+        }
+        this.histogram.add(score);
+        this.generation.incrementAndGet(); //Even if the user isn't indexed, positions changed
+        this.rememberUser(username); //Even if the filter may have it: a false positive can't skip a rebuild
+        this.changedUsers.add(username);
+        if (this.index.raise(username, score)) {
+            this.indexChanged(username);
+        }
+
+        if (this.topUsers.get(Ranking.TOP_SIZE - 1).getScore() < score //The score is higher than the lowest top 3 score?
+                && this.raiseTop(username, score)) {
+            this.topChanged.set(true);
+        }
+        return true;
+    }
+
+    /**
+     * Counts applied highscore changes, and schedules a flush when they reach
+     * the flush threshold.
+     *
+     * @param amount of changes
+     * @return the ticket of the newest change.
+     */
+    private long changesApplied(int amount) {
+        long ticket = this.changeCount.addAndGet(amount);
+        int before = this.changes.getAndAdd(amount);
+        if (before < this.flushThreshold && before + amount >= this.flushThreshold
+                && this.flusher != null) {
+            this.flusher.execute(this.flushTask); //Too many changes to wait for the interval
+        }
+        return ticket;
+    }
+
+    /**
+     * Waits until a change is synced to the disk. The first waiter schedules a
+     * flush; the others arriving before it starts are saved by the same flush.
+     * If the flush fails, its waiters fail too instead of waiting for a flush
+     * that may never succeed; their changes are still retried by the next
+     * flushes.
+     *
+     * @param ticket the change's number
+     * @throws IOException if the change's flush failed.
+     * @throws InterruptedIOException if the thread is interrupted.
+     */
+    private void awaitCommit(long ticket) throws IOException {
+        this.requestCommit();
+        this.commitLock.lock();
+        try {
+            while (this.committedCount < ticket) {
+                if (ticket <= this.failedCount) {
+                    throw new IOException("Ranking change not saved: " + this.commitFailure.getMessage(), this.commitFailure);
+                }
+                this.commitDone.await();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the ranking commit");
+        } finally {
+            this.commitLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the writer applied and synced a queued score. A score of
+     * the last failed batch fails even if a later batch was saved.
+     *
+     * @param position the score's position in the queue
+     * @throws IOException if the score's batch failed.
+     * @throws InterruptedIOException if the thread is interrupted.
+     */
+    private void awaitQueued(long position) throws IOException {
+        this.commitLock.lock();
+        try {
+            while (true) {
+                if (position >= this.queueFailedFrom && position < this.queueFailed) {
+                    throw new IOException("Ranking change not saved: " + this.commitFailure.getMessage(), this.commitFailure);
+                }
+                if (position < this.queueCommitted) {
+                    return;
+                }
+                this.commitDone.await();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the ranking commit");
+        } finally {
+            this.commitLock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the sessions whose queued scores were applied and synced.
+     *
+     * @param head position of the first score not drained yet
+     */
+    private void commitQueued(long head) {
+        this.commitLock.lock();
+        try {
+            this.queueCommitted = head;
+            this.commitDone.signalAll();
+        } finally {
+            this.commitLock.unlock();
+        }
+    }
 
-        if (this.getUserHighscore(username) < score) { //Refreshs only if the given score is higher than the highscore
-            this.generalRanking.setProperty(username, "" + score); //Set the score on the general ranking
-            if (this.topUsers[2].getScore() < score) { //The score is higher than the lowest top 3 score?
-                this.topUsers[2] = new RankingItem(username, score); //Switch the given score with the lowest top3 score
-                this.top3.clear(); //Clear the top 3 file
-                for (RankingItem userTuple : this.topUsers) { //Create a new top3 file
-                    this.top3.setProperty(userTuple.getUsername(), "" + userTuple.getScore());
+    /**
+     * Wakes up the sessions whose queued scores couldn't be applied or
+     * synced, so they fail.
+     *
+     * @param head position of the first score not drained yet
+     * @param failure the batch's error
+     */
+    private void failQueued(long head, IOException failure) {
+        this.commitLock.lock();
+        try {
+            this.queueFailedFrom = this.queueCommitted;
+            this.queueFailed = head;
+            this.commitFailure = failure;
+            this.commitDone.signalAll();
+        } finally {
+            this.commitLock.unlock();
+        }
+    }
+
+    /**
+     * Schedules a flush for the changes waiting to be committed, unless one is
+     * already scheduled.
+     */
+    private void requestCommit() {
+        if (this.flushRequested.compareAndSet(false, true)) {
+            this.flusher.execute(this.flushTask);
+        }
+    }
+
+    /**
+     * Wakes up the refreshes whose changes were synced.
+     *
+     * @param ticket number of the newest change saved
+     */
+    private void commit(long ticket) {
+        this.commitLock.lock();
+        try {
+            if (this.committedCount < ticket) {
+                this.committedCount = ticket;
+            }
+            this.commitDone.signalAll();
+        } finally {
+            this.commitLock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the refreshes whose changes couldn't be synced, so they fail.
+     *
+     * @param ticket number of the newest change of the failed flush
+     * @param failure the flush's error
+     */
+    private void fail(long ticket, IOException failure) {
+        this.commitLock.lock();
+        try {
+            if (this.failedCount < ticket) {
+                this.failedCount = ticket;
+            }
+            this.commitFailure = failure;
+            this.commitDone.signalAll();
+        } finally {
+            this.commitLock.unlock();
+        }
+    }
+
+    /**
+     * Puts a score in the top 3. If the user is already there, the user's entry
+     * is replaced, otherwise the lowest entry is.
+     *
+     * @param username of the user
+     * @param score the user's new highscore
+     * @return true if the top 3 was changed, false otherwise.
+     */
+    private boolean raiseTop(String username, int score) {
+        synchronized (this.topLock) {
+            RankingItem[] top = this.topUsers.toArray();
+            int slot = Ranking.TOP_SIZE - 1;
+            for (int i = 0; i < top.length; i++) {
+                if (top[i].getUsername().equals(username)) {
+                    slot = i;
                 }
-                this.top3.store(new FileOutputStream("top3.data"), ""); //Saving top3 file
-                Arrays.sort(topUsers);
             }
-            this.generalRanking.store(new FileOutputStream("ranking.data"), ""); //Saving general ranking
-            
+            if (top[slot].getScore() >= score) {
+                return false;
+            }
+            top[slot] = new RankingItem(username, score);
+            Arrays.sort(top);
+            this.topUsers = new TopSnapshot(top);
             return true;
         }
-        return false;
     }
 
-    public static void main(String[] args) throws IOException {
-        Ranking ranking = new Ranking();
+    /**
+     * Saves the changes made since the last flush, if any: the changed
+     * highscores are appended to the journals of their shards, and the top 3
+     * file and the daily and weekly rankings' files are saved if they
+     * changed. A shard whose journal reached the
+     * compaction threshold is compacted. If the files can't be written, the
+     * changes are kept for the next flush, and the refreshes waiting for them
+     * fail.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        synchronized (this.storeLock) {
+            if (this.rankingFile == null) {
+                return;
+            }
+            this.changes.set(0);
+            long ticket = this.changeCount.get(); //Every change up to it is drained below
+            boolean top = this.topChanged.getAndSet(false);
+            boolean windows = this.windowsChanged.getAndSet(false);
+            if (this.mappedRanking != null) { //The scores are already in the file
+                this.changedUsers.clear();
+                try {
+                    this.generalRanking.force();
+                    if (windows) {
+                        this.storeWindows();
+                    }
+                } catch (IOException ex) {
+                    this.windowsChanged.compareAndSet(false, windows);
+                    this.fail(ticket, ex);
+                    throw ex;
+                }
+                this.commit(ticket);
+                return;
+            }
+            Properties[] records = new Properties[this.shards]; //Null for the shards without changes
+            for (Iterator<String> users = this.changedUsers.iterator(); users.hasNext();) {
+                String username = users.next();
+                users.remove(); //Before reading the score, so a newer score marks the user again
+                int shard = this.shardedRanking.shard(username);
+                if (records[shard] == null) {
+                    records[shard] = new Properties();
+                }
+                records[shard].setProperty(username, "" + this.generalRanking.get(username));
+            }
+            try {
+                if (top) {
+                    this.storeTop3();
+                }
+                if (windows) {
+                    this.storeWindows();
+                }
+                for (int shard = 0; shard < this.shards; shard++) {
+                    if (records[shard] != null) {
+                        this.appendJournal(shard, records[shard]);
+                    }
+                }
+            } catch (IOException ex) {
+                for (Properties shardRecords : records) {
+                    if (shardRecords != null) {
+                        this.changedUsers.addAll(shardRecords.stringPropertyNames());
+                    }
+                }
+                this.topChanged.compareAndSet(false, top);
+                this.windowsChanged.compareAndSet(false, windows);
+                this.fail(ticket, ex);
+                throw ex;
+            }
+            this.commit(ticket); //The journals are synced, a failed compaction loses nothing
+            for (int shard = 0; shard < this.shards; shard++) {
+                if (this.journalRecords[shard] >= this.compactionThreshold) {
+                    this.compact(shard);
+                }
+            }
+        }
+    }
 
-        RankingItem[] top3 = ranking.getTop3();
+    /**
+     * Appends records to a shard's journal and syncs it.
+     *
+     * @param shard number of the shard
+     * @param records username and highscore of the shard's changed users
+     * @throws IOException
+     */
+    private void appendJournal(int shard, Properties records) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        records.store(content, null);
+        try (FileOutputStream output = new FileOutputStream(this.journalFiles[shard], true)) {
+            content.writeTo(output);
+            output.getFD().sync();
+        }
+        this.journalRecords[shard] += records.size();
+    }
+
+    /**
+     * Saves a shard of the general ranking as its new snapshot and empties
+     * its journal. The journal is only emptied after the snapshot is saved,
+     * so its records are never lost.
+     *
+     * @param shard number of the shard
+     * @throws IOException
+     */
+    private void compact(int shard) throws IOException {
+        Ranking.store(this.shardSnapshot(shard), Ranking.shardFile(this.rankingFile, shard, this.shards)); //Saving general ranking
+        new FileOutputStream(this.journalFiles[shard]).close();
+        this.journalRecords[shard] = 0;
+    }
+
+    /**
+     *
+     * @param shard number of the shard
+     * @return the shard's users and highscores.
+     */
+    private Properties shardSnapshot(int shard) {
+        final Properties ranking = new Properties();
+        this.shardedRanking.visit(shard, new ScoreStore.Visitor() {
+            @Override
+            public void visit(String username, int score) {
+                ranking.setProperty(username, "" + score);
+            }
+        });
+        return ranking;
+    }
+
+    /**
+     * Saves the top 3 file.
+     *
+     * @throws IOException
+     */
+    private void storeTop3() throws IOException {
+        Properties top3 = new Properties();
+        for (RankingItem userTuple : this.topUsers.toArray()) { //Create a new top3 file
+            top3.setProperty(userTuple.getUsername(), "" + userTuple.getScore());
+        }
+        Ranking.store(top3, this.top3File); //Saving top3 file
+    }
+
+    /**
+     * Saves the daily and weekly rankings' files, so a restart keeps them.
+     *
+     * @throws IOException
+     */
+    private void storeWindows() throws IOException {
+        Ranking.store(this.dailyRanking.snapshot(), this.rankingFile + Ranking.DAILY_SUFFIX);
+        Ranking.store(this.weeklyRanking.snapshot(), this.rankingFile + Ranking.WEEKLY_SUFFIX);
+    }
+
+    /**
+     * Saves a properties file. The content is written in memory first, so the
+     * properties' monitor isn't held during the file I/O (a virtual thread
+     * blocked inside a monitor pins its carrier thread). Then it's written to
+     * a temporary file, synced and renamed over the file, so the file is
+     * either the old or the new one, even after a crash.
+     *
+     * @param properties to be saved
+     * @param file location of the file
+     * @throws IOException
+     */
+    private static void store(Properties properties, String file) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        properties.store(content, "");
+        File temporary = new File(file + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temporary)) {
+            content.writeTo(output);
+            output.getFD().sync();
+        }
+        Files.move(temporary.toPath(), new File(file).toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Ranking ranking = Ranking.instance();
+        ranking.loadRankings("ranking.data", "top3.data");
 
-        for (RankingItem x : top3) {
+        for (RankingItem x : ranking.getTop3()) {
             System.out.println(x.getUsername() + " : " + x.getScore());
         }
 
         ranking.refreshUserHighscore("second", 11000000);
+        ranking.flush();
 
-        for (RankingItem x : top3) {
+        for (RankingItem x : ranking.getTop3()) {
             System.out.println(x.getUsername() + " : " + x.getScore());
         }
     }
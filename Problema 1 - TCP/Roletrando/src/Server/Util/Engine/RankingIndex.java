@@ -0,0 +1,355 @@
+package Server.Util.Engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The ranked users, sorted by score (descending) and username. It's an
+ * indexable skip list: each link knows how many users it skips, so the
+ * position of a user and the users at a position are found in O(log n).
+ *
+ * An index may keep only the best users, up to a capacity: a user that
+ * falls behind them is dropped. The highscores only rise, so it's still
+ * exactly the best users of the store, and a dropped user is put back by the
+ * new highscore that makes it one of them again.
+ *
+ * The users are kept by their id in a ScoreStore, which holds the usernames:
+ * a node has the id and the score, and the nodes are found by id in an array
+ * (in a map, if the index has a capacity, so its size doesn't depend on the
+ * store's), so the index keeps no String of its own. Most nodes have only the first
+ * level, which is kept in the node's fields.
+ *
+ * @see Ranking
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class RankingIndex {
+
+    private static final int MAX_LEVEL = 24; //Enough for 4^24 users.
+
+    private final ScoreStore store; //Usernames of the ids.
+    private final Node head; //Before the first user, at every level.
+    private Node[] nodes; //Node of each id, or null; without a capacity.
+    private final Map<Integer, Node> bestNodes; //Node of each id, with a capacity.
+    private final ReentrantReadWriteLock lock; //Queries share, updates don't.
+    private final int capacity; //Maximum amount of users.
+    private int level; //Levels in use.
+    private int size; //Amount of users.
+
+    /**
+     *
+     * @param store holds the users of the index, added before them
+     */
+    RankingIndex(ScoreStore store) {
+        this(store, Integer.MAX_VALUE);
+    }
+
+    /**
+     *
+     * @param store holds the users of the index, added before them
+     * @param capacity maximum amount of users, the best ones are kept
+     */
+    RankingIndex(ScoreStore store, int capacity) {
+        this.store = store;
+        this.head = new Node(ScoreStore.MISSING, 0, RankingIndex.MAX_LEVEL);
+        this.lock = new ReentrantReadWriteLock();
+        this.capacity = capacity;
+        if (capacity == Integer.MAX_VALUE) {
+            this.nodes = new Node[16];
+            this.bestNodes = null;
+        } else {
+            this.bestNodes = new HashMap<>();
+        }
+        this.level = 1;
+    }
+
+    /**
+     * Puts a user with the given score, or raises the user's score. A lower
+     * score is ignored, so raises arriving out of order keep the highest.
+     *
+     * @param username of a user of the store
+     * @param score the user's highscore
+     * @return true if the index was changed, false otherwise.
+     */
+    boolean raise(String username, int score) {
+        int id = this.store.id(username);
+        if (id == ScoreStore.MISSING) {
+            return false;
+        }
+        this.lock.writeLock().lock();
+        try {
+            Node node = this.node(id);
+            if (node != null) {
+                if (node.score >= score) {
+                    return false;
+                }
+                this.remove(node, username);
+            } else if (this.size >= this.capacity) {
+                Node last = this.last();
+                String lastUsername = this.store.username(last.id);
+                if (!RankingIndex.before(score, username, last.score, lastUsername)) {
+                    return false;
+                }
+                this.remove(last, lastUsername);
+            }
+            this.insert(id, username, score);
+            return true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     *
+     * @param username of the user, or null
+     * @return the user's position, starting at 1, or 0 if the user isn't
+     * ranked.
+     */
+    int position(String username) {
+        if (username == null) {
+            return 0;
+        }
+        int id = this.store.id(username);
+        if (id == ScoreStore.MISSING) {
+            return 0;
+        }
+        this.lock.readLock().lock();
+        try {
+            Node node = this.node(id);
+            if (node == null) {
+                return 0;
+            }
+            int position = 0;
+            Node x = this.head;
+            for (int i = this.level - 1; i >= 0; i--) {
+                while (x.next(i) != null && (x.next(i) == node
+                        || this.before(x.next(i), username, node.score))) {
+                    position += x.span(i);
+                    x = x.next(i);
+                }
+            }
+            return position;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the users from a position.
+     *
+     * @param offset amount of users skipped, position - 1
+     * @param limit maximum amount of users
+     * @return the users, sorted; empty if offset is after the last user.
+     */
+    RankingItem[] range(int offset, int limit) {
+        this.lock.readLock().lock();
+        try {
+            if (offset < 0 || offset >= this.size || limit <= 0) {
+                return new RankingItem[0];
+            }
+            Node x = this.head;
+            int traversed = 0;
+            for (int i = this.level - 1; i >= 0 && traversed <= offset; i--) {
+                while (x.next(i) != null && traversed + x.span(i) <= offset + 1) {
+                    traversed += x.span(i);
+                    x = x.next(i);
+                }
+            }
+            RankingItem[] items = new RankingItem[Math.min(limit, this.size - offset)];
+            for (int i = 0; i < items.length; i++, x = x.next(0)) {
+                items[i] = new RankingItem(this.store.username(x.id), x.score);
+            }
+            return items;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     *
+     * @return amount of ranked users.
+     */
+    int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     *
+     * @return true if the index has as many users as its capacity, so users
+     * of the store may be missing.
+     */
+    boolean isFull() {
+        this.lock.readLock().lock();
+        try {
+            return this.size >= this.capacity;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if a node comes before a (username, score) key.
+     */
+    private boolean before(Node node, String username, int score) {
+        return node.score > score
+                || (node.score == score && this.store.compareUsername(node.id, username) < 0);
+    }
+
+    /**
+     * Checks if a (username, score) key comes before another.
+     */
+    private static boolean before(int score, String username, int otherScore, String otherUsername) {
+        return score > otherScore || (score == otherScore && username.compareTo(otherUsername) < 0);
+    }
+
+    /**
+     *
+     * @return the node of the last user; the index isn't empty.
+     */
+    private Node last() {
+        Node x = this.head;
+        for (int i = this.level - 1; i >= 0; i--) {
+            while (x.next(i) != null) {
+                x = x.next(i);
+            }
+        }
+        return x;
+    }
+
+    private Node node(int id) {
+        if (this.bestNodes != null) {
+            return this.bestNodes.get(id);
+        }
+        return id < this.nodes.length ? this.nodes[id] : null;
+    }
+
+    private void insert(int id, String username, int score) {
+        Node[] update = new Node[RankingIndex.MAX_LEVEL];
+        int[] rank = new int[RankingIndex.MAX_LEVEL]; //Position of update[i]
+        Node x = this.head;
+        for (int i = this.level - 1; i >= 0; i--) {
+            rank[i] = i == this.level - 1 ? 0 : rank[i + 1];
+            while (x.next(i) != null && this.before(x.next(i), username, score)) {
+                rank[i] += x.span(i);
+                x = x.next(i);
+            }
+            update[i] = x;
+        }
+
+        int nodeLevel = RankingIndex.randomLevel();
+        if (nodeLevel > this.level) {
+            for (int i = this.level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = this.head;
+                this.head.setSpan(i, this.size);
+            }
+            this.level = nodeLevel;
+        }
+
+        Node node = new Node(id, score, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            node.setNext(i, update[i].next(i));
+            update[i].setNext(i, node);
+            node.setSpan(i, update[i].span(i) - (rank[0] - rank[i]));
+            update[i].setSpan(i, rank[0] - rank[i] + 1);
+        }
+        for (int i = nodeLevel; i < this.level; i++) {
+            update[i].setSpan(i, update[i].span(i) + 1);
+        }
+        this.size++;
+        if (this.bestNodes != null) {
+            this.bestNodes.put(id, node);
+            return;
+        }
+        if (id >= this.nodes.length) {
+            this.nodes = Arrays.copyOf(this.nodes, Math.max(id + 1, this.nodes.length * 2));
+        }
+        this.nodes[id] = node;
+    }
+
+    private void remove(Node node, String username) {
+        Node x = this.head;
+        for (int i = this.level - 1; i >= 0; i--) {
+            while (x.next(i) != null && this.before(x.next(i), username, node.score)) {
+                x = x.next(i);
+            }
+            if (x.next(i) == node) {
+                x.setSpan(i, x.span(i) + node.span(i) - 1);
+                x.setNext(i, node.next(i));
+            } else {
+                x.setSpan(i, x.span(i) - 1);
+            }
+        }
+        while (this.level > 1 && this.head.next(this.level - 1) == null) {
+            this.level--;
+        }
+        this.size--;
+        if (this.bestNodes != null) {
+            this.bestNodes.remove(node.id);
+        } else {
+            this.nodes[node.id] = null;
+        }
+    }
+
+    /**
+     *
+     * @return a level from 1, each level is 4 times less likely.
+     */
+    private static int randomLevel() {
+        int nodeLevel = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (nodeLevel < RankingIndex.MAX_LEVEL && random.nextInt(4) == 0) {
+            nodeLevel++;
+        }
+        return nodeLevel;
+    }
+
+    private static class Node {
+
+        private final int id; //User's id in the store.
+        private final int score;
+        private Node next; //Next node at the first level.
+        private int span; //Users skipped by the first level's link, the next node included.
+        private final Node[] upperNext; //Next node at each level above the first, null with one level.
+        private final int[] upperSpan;
+
+        Node(int id, int score, int level) {
+            this.id = id;
+            this.score = score;
+            this.upperNext = level == 1 ? null : new Node[level - 1];
+            this.upperSpan = level == 1 ? null : new int[level - 1];
+        }
+
+        Node next(int level) {
+            return level == 0 ? this.next : this.upperNext[level - 1];
+        }
+
+        void setNext(int level, Node node) {
+            if (level == 0) {
+                this.next = node;
+            } else {
+                this.upperNext[level - 1] = node;
+            }
+        }
+
+        int span(int level) {
+            return level == 0 ? this.span : this.upperSpan[level - 1];
+        }
+
+        void setSpan(int level, int span) {
+            if (level == 0) {
+                this.span = span;
+            } else {
+                this.upperSpan[level - 1] = span;
+            }
+        }
+    }
+}
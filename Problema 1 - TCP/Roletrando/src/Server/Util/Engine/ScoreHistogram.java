@@ -0,0 +1,150 @@
+package Server.Util.Engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Amount of users by highscore, in logarithmic buckets, so its size doesn't
+ * depend on the amount of users. The scores under SUB_BUCKETS have a bucket
+ * each; above them, each power of 2 is split in SUB_BUCKETS buckets, so a
+ * bucket is at most 1/SUB_BUCKETS of its scores wide. The percentiles assume
+ * the scores are evenly spread inside a bucket.
+ *
+ * Updated by the Ranking, which moves a user from the old highscore's bucket
+ * to the new one. The queries take no lock; while users are moved, they may
+ * count a user twice or miss it.
+ *
+ * @see Ranking#getPercentile(int)
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class ScoreHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << ScoreHistogram.SUB_BUCKET_BITS;
+    private static final int BUCKETS = ScoreHistogram.bucket(Integer.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts; //Users of each bucket.
+
+    ScoreHistogram() {
+        this.counts = new AtomicLongArray(ScoreHistogram.BUCKETS);
+    }
+
+    void add(int score) {
+        this.counts.incrementAndGet(ScoreHistogram.bucket(score));
+    }
+
+    void remove(int score) {
+        this.counts.decrementAndGet(ScoreHistogram.bucket(score));
+    }
+
+    /**
+     *
+     * @param score a highscore
+     * @return the percentage of users whose highscore is lower, from 0 to
+     * 100.
+     */
+    double percentile(int score) {
+        int scoreBucket = ScoreHistogram.bucket(Math.max(0, score));
+        long total = 0;
+        double below = 0;
+        for (int bucket = 0; bucket < ScoreHistogram.BUCKETS; bucket++) {
+            long count = this.counts.get(bucket);
+            total += count;
+            if (bucket < scoreBucket) {
+                below += count;
+            } else if (bucket == scoreBucket) {
+                below += count * (double) (score - ScoreHistogram.lowest(bucket)) / ScoreHistogram.width(bucket);
+            }
+        }
+        return total <= 0 ? 0 : Math.min(100, 100 * below / total);
+    }
+
+    /**
+     *
+     * @param percentile from 0 to 100
+     * @return the lowest score higher than the given percentage of users, or
+     * 0 without users.
+     */
+    int scoreAt(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[ScoreHistogram.BUCKETS];
+        for (int bucket = 0; bucket < ScoreHistogram.BUCKETS; bucket++) {
+            snapshot[bucket] = Math.max(0, this.counts.get(bucket));
+            total += snapshot[bucket];
+        }
+        double target = total * Math.max(0, Math.min(100, percentile)) / 100;
+        long below = 0;
+        for (int bucket = 0; bucket < ScoreHistogram.BUCKETS; bucket++) {
+            if (snapshot[bucket] > 0 && below + snapshot[bucket] > target) {
+                double inside = (target - below) / snapshot[bucket];
+                return ScoreHistogram.lowest(bucket) + (int) (inside * ScoreHistogram.width(bucket));
+            }
+            below += snapshot[bucket];
+        }
+        for (int bucket = ScoreHistogram.BUCKETS - 1; bucket >= 0; bucket--) { //Every user is below: the best bucket's top
+            if (snapshot[bucket] > 0) {
+                return ScoreHistogram.lowest(bucket) + ScoreHistogram.width(bucket) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds between which scores are the users of some positions, so only the
+     * users with these scores have to be sorted to find them.
+     *
+     * @param offset amount of users before the first position
+     * @param limit amount of positions
+     * @return the lowest and the highest score of the buckets holding the
+     * positions, or null if there are fewer than offset + 1 users.
+     */
+    int[] scoreRange(int offset, int limit) {
+        int[] range = null;
+        long above = 0; //Users of the higher buckets
+        for (int bucket = ScoreHistogram.BUCKETS - 1; bucket >= 0; bucket--) {
+            above += Math.max(0, this.counts.get(bucket));
+            if (range == null && above > offset) {
+                long highest = (long) ScoreHistogram.lowest(bucket) + ScoreHistogram.width(bucket) - 1;
+                range = new int[]{0, (int) Math.min(Integer.MAX_VALUE, highest)};
+            }
+            if (range != null && above >= (long) offset + limit) {
+                range[0] = ScoreHistogram.lowest(bucket);
+                break;
+            }
+        }
+        return range;
+    }
+
+    /**
+     *
+     * @param score a score, from 0
+     * @return the score's bucket.
+     */
+    private static int bucket(int score) {
+        if (score < ScoreHistogram.SUB_BUCKETS) {
+            return score;
+        }
+        int shift = 31 - Integer.numberOfLeadingZeros(score) - ScoreHistogram.SUB_BUCKET_BITS;
+        return (shift + 1) * ScoreHistogram.SUB_BUCKETS + ((score >>> shift) - ScoreHistogram.SUB_BUCKETS);
+    }
+
+    /**
+     *
+     * @return the lowest score of a bucket.
+     */
+    private static int lowest(int bucket) {
+        if (bucket < ScoreHistogram.SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / ScoreHistogram.SUB_BUCKETS - 1;
+        return (ScoreHistogram.SUB_BUCKETS + bucket % ScoreHistogram.SUB_BUCKETS) << shift;
+    }
+
+    /**
+     *
+     * @return the amount of scores of a bucket.
+     */
+    private static int width(int bucket) {
+        return bucket < ScoreHistogram.SUB_BUCKETS ? 1 : 1 << (bucket / ScoreHistogram.SUB_BUCKETS - 1);
+    }
+}
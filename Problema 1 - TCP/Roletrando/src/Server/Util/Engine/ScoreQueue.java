@@ -0,0 +1,138 @@
+package Server.Util.Engine;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring buffer of scores, written by many sessions and read by one
+ * writer thread. A producer claims a position with a CAS on the tail, writes
+ * the score in the position's slot and publishes it through the slot's
+ * sequence; the consumer reads the slots in order and gives each one back by
+ * moving its sequence a lap ahead. No lock is taken, and a full buffer is
+ * reported instead of waited.
+ *
+ * @see Ranking#submitUserScore(String, int, boolean)
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class ScoreQueue {
+
+    private final String[] usernames;
+    private final int[] scores;
+    private final AtomicLongArray sequence; //Position + 1 when the slot is published, position + capacity when it's free.
+    private final int mask; //Capacity - 1, the capacity is a power of 2.
+    private final AtomicLong tail; //Next position claimed by a producer.
+    private long head; //Next position read, only used by the consumer.
+    private volatile Thread sleeper; //Consumer waiting for scores, or null.
+
+    /**
+     *
+     * @param capacity amount of scores, rounded up to a power of 2
+     */
+    ScoreQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.usernames = new String[size];
+        this.scores = new int[size];
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequence.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+    }
+
+    /**
+     * Puts a score at the end, and wakes up the consumer if it's waiting.
+     *
+     * @param username of the user
+     * @param score the user's score
+     * @return the score's position, or -1 if the buffer is full.
+     */
+    long offer(String username, int score) {
+        long position = this.tail.get();
+        while (true) {
+            int slot = (int) position & this.mask;
+            long difference = this.sequence.get(slot) - position;
+            if (difference == 0) {
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = this.tail.get();
+            } else if (difference < 0) { //The slot wasn't read since the last lap
+                return -1;
+            } else { //Claimed by another producer
+                position = this.tail.get();
+            }
+        }
+        int slot = (int) position & this.mask;
+        this.usernames[slot] = username;
+        this.scores[slot] = score;
+        this.sequence.set(slot, position + 1);
+        Thread consumer = this.sleeper;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return position;
+    }
+
+    /**
+     * Reads scores from the beginning. Must be called by one thread at a time.
+     *
+     * @param handler receives each score
+     * @param max maximum amount of scores read
+     * @return amount of scores read.
+     * @throws IOException if the handler fails; the score it was given is
+     * read anyway.
+     */
+    int drain(Handler handler, int max) throws IOException {
+        int read = 0;
+        while (read < max) {
+            int slot = (int) this.head & this.mask;
+            if (this.sequence.get(slot) != this.head + 1) { //Empty, or claimed but not yet written
+                break;
+            }
+            String username = this.usernames[slot];
+            int score = this.scores[slot];
+            this.usernames[slot] = null;
+            this.sequence.set(slot, this.head + this.mask + 1);
+            this.head++;
+            read++;
+            handler.score(username, score);
+        }
+        return read;
+    }
+
+    /**
+     * Only called by the consumer.
+     *
+     * @return position of the next score read; the scores before it were
+     * read.
+     */
+    long head() {
+        return this.head;
+    }
+
+    /**
+     * Waits until a score is put or the time passes. Only called by the
+     * consumer.
+     *
+     * @param nanos maximum time to wait
+     */
+    void await(long nanos) {
+        this.sleeper = Thread.currentThread();
+        if (this.sequence.get((int) this.head & this.mask) != this.head + 1) { //Checked after sleeper is set, so a put can't be missed
+            LockSupport.parkNanos(this, nanos);
+        }
+        this.sleeper = null;
+    }
+
+    /**
+     * Receives the scores read from the buffer.
+     */
+    interface Handler {
+
+        void score(String username, int score) throws IOException;
+    }
+}
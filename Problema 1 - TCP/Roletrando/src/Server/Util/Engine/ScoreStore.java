@@ -0,0 +1,113 @@
+package Server.Util.Engine;
+
+import java.io.IOException;
+
+/**
+ * Highscore of each user. Ranking keeps the scores in one of the stores:
+ * HeapScoreStore, the default, or MappedScoreStore, kept in a file.
+ *
+ * @see Ranking
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+abstract class ScoreStore {
+
+    public static final int MISSING = -1; //Score of an unknown user.
+
+    /**
+     *
+     * @param username of the user
+     * @return the user's highscore, or MISSING if the user is unknown.
+     */
+    abstract int get(String username);
+
+    /**
+     * Sets a user's highscore if the score is higher, adding the user if it's
+     * unknown.
+     *
+     * @param username of the user
+     * @param score new score
+     * @return true if the highscore was changed, false otherwise.
+     * @throws IOException if the store's file can't be written.
+     */
+    boolean raise(String username, int score) throws IOException {
+        return this.raiseFrom(username, score) < score;
+    }
+
+    /**
+     * Sets a user's highscore if the score is higher, adding the user if it's
+     * unknown.
+     *
+     * @param username of the user
+     * @param score new score
+     * @return the user's previous highscore, or MISSING if the user was
+     * unknown; the highscore was changed if it's lower than score.
+     * @throws IOException if the store's file can't be written.
+     */
+    abstract int raiseFrom(String username, int score) throws IOException;
+
+    /**
+     *
+     * @return amount of users.
+     */
+    abstract int size();
+
+    /**
+     * Gets the id of a user. The ids never change, and they're dense from 0,
+     * so they can index arrays.
+     *
+     * @param username of the user
+     * @return the user's id, or MISSING if the user is unknown.
+     */
+    abstract int id(String username);
+
+    /**
+     *
+     * @param id of a user
+     * @return the user's username.
+     */
+    abstract String username(int id);
+
+    /**
+     * Compares a user's username with a username, as String.compareTo does,
+     * without creating the user's String.
+     *
+     * @param id of a user
+     * @param username compared username
+     * @return less than 0, 0 or more than 0 if the user's username comes
+     * before, is equal to or comes after the given one.
+     */
+    abstract int compareUsername(int id, String username);
+
+    /**
+     * Visits every user. Users added while visiting may not be visited.
+     *
+     * @param visitor receives each username and highscore
+     */
+    abstract void visit(Visitor visitor);
+
+    /**
+     * Saves the scores, if the store keeps them in a file.
+     *
+     * @throws IOException
+     */
+    void force() throws IOException {
+    }
+
+    static int hash(String username) {
+        return ScoreStore.mix(username.hashCode());
+    }
+
+    static int mix(int stringHash) {
+        int hash = stringHash * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Receives the users of the store.
+     */
+    interface Visitor {
+
+        void visit(String username, int score);
+    }
+}
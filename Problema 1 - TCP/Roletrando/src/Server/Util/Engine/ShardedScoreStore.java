@@ -0,0 +1,102 @@
+package Server.Util.Engine;
+
+/**
+ * Highscores split in HeapScoreStores by the hash of the username, one for
+ * each shard file of the general ranking, so a shard's users are visited
+ * without visiting every user.
+ *
+ * @see Ranking#setShards(int)
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class ShardedScoreStore extends ScoreStore {
+
+    private final HeapScoreStore[] shards;
+
+    /**
+     *
+     * @param shards amount of shards, from 1
+     */
+    ShardedScoreStore(int shards) {
+        this.shards = new HeapScoreStore[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new HeapScoreStore();
+        }
+    }
+
+    /**
+     * The shard comes from another hash than the stores' slots and stripes,
+     * so the users of a shard still spread over all of them.
+     *
+     * @param username of the user
+     * @return number of the user's shard.
+     */
+    int shard(String username) {
+        int hash = username.hashCode() * 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return (hash >>> 1) % this.shards.length;
+    }
+
+    int getShards() {
+        return this.shards.length;
+    }
+
+    @Override
+    int get(String username) {
+        return this.shards[this.shard(username)].get(username);
+    }
+
+    @Override
+    int raiseFrom(String username, int score) {
+        return this.shards[this.shard(username)].raiseFrom(username, score);
+    }
+
+    @Override
+    int size() {
+        int size = 0;
+        for (HeapScoreStore shard : this.shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    @Override
+    void visit(Visitor visitor) {
+        for (HeapScoreStore shard : this.shards) {
+            shard.visit(visitor);
+        }
+    }
+
+    /**
+     * The id of a user is its shard's id times the amount of shards plus the
+     * shard's number.
+     */
+    @Override
+    int id(String username) {
+        int shard = this.shard(username);
+        int id = this.shards[shard].id(username);
+        return id == ScoreStore.MISSING ? ScoreStore.MISSING : id * this.shards.length + shard;
+    }
+
+    @Override
+    String username(int id) {
+        return this.shards[id % this.shards.length].username(id / this.shards.length);
+    }
+
+    @Override
+    int compareUsername(int id, String username) {
+        return this.shards[id % this.shards.length].compareUsername(id / this.shards.length, username);
+    }
+
+    /**
+     * Visits the users of a shard.
+     *
+     * @param shard number of the shard
+     * @param visitor receives each username and highscore
+     */
+    void visit(int shard, Visitor visitor) {
+        this.shards[shard].visit(visitor);
+    }
+}
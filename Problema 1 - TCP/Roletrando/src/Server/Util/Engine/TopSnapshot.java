@@ -0,0 +1,70 @@
+package Server.Util.Engine;
+
+import Server.Util.Protocol.FrameWriter;
+import Server.Util.Protocol.Protocol;
+
+/**
+ * Immutable copy of the top users, with the fields of its RANKING_TOP3 answer
+ * already encoded. A new snapshot is published only when the top changes, so
+ * readers never see a top being changed, and its answer is encoded once for
+ * every client.
+ *
+ * @see Ranking#getTopSnapshot()
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+public final class TopSnapshot {
+
+    private final RankingItem[] users; //Sorted, never changed.
+    private final byte[] fields; //Encoded RANKING_TOP3 answer.
+
+    /**
+     *
+     * @param users sorted users, not changed after this call
+     */
+    TopSnapshot(RankingItem[] users) {
+        this.users = users;
+        FrameWriter encoder = new FrameWriter(null);
+        encoder.begin(Protocol.RANKING_TOP3, 0).putInt(users.length);
+        for (RankingItem user : users) {
+            encoder.putString(user.getUsername()).putInt(user.getScore());
+        }
+        this.fields = encoder.getFields();
+    }
+
+    /**
+     *
+     * @return amount of users.
+     */
+    public int size() {
+        return this.users.length;
+    }
+
+    /**
+     *
+     * @param i position - 1
+     * @return the user at the position.
+     */
+    public RankingItem get(int i) {
+        return this.users[i];
+    }
+
+    /**
+     * Copy of the users, which can be changed by the caller.
+     *
+     * @return the sorted users.
+     */
+    public RankingItem[] toArray() {
+        return this.users.clone();
+    }
+
+    /**
+     * The fields of a RANKING_TOP3 answer: the amount of users, then the
+     * username and the score of each user. Must not be changed.
+     *
+     * @return the encoded fields.
+     */
+    public byte[] getFields() {
+        return this.fields;
+    }
+}
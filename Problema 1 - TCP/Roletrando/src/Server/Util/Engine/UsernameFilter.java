@@ -0,0 +1,114 @@
+package Server.Util.Engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of the ranked usernames. It answers in a few bit reads if a
+ * user is surely unknown, so a lookup of an unknown user doesn't search the
+ * ScoreStore. A known user is never reported unknown; an unknown user is
+ * reported known about 1% of the times, when the filter has at most its
+ * capacity of users.
+ *
+ * The bits can't be removed or spread, so a full filter is replaced by a
+ * bigger one, built again from the store.
+ *
+ * @see Ranking#getUserHighscore(String)
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class UsernameFilter {
+
+    public static final int MIN_CAPACITY = 1024; //Users of the smallest filter.
+    private static final int BITS_PER_USER = 10;
+    private static final int HASHES = 7; //Best amount of hashes for 10 bits per user.
+
+    private final AtomicLongArray bits;
+    private final long bitCount; //Power of 2.
+    private final int capacity; //Users it was sized for.
+    private final AtomicInteger size; //Adds that set a bit, about the amount of different users.
+
+    /**
+     *
+     * @param capacity amount of users it holds at the expected error
+     */
+    UsernameFilter(int capacity) {
+        this.capacity = Math.max(UsernameFilter.MIN_CAPACITY, capacity);
+        long wanted = (long) this.capacity * UsernameFilter.BITS_PER_USER;
+        this.bitCount = Long.highestOneBit(wanted - 1) << 1;
+        this.bits = new AtomicLongArray((int) (this.bitCount >>> 6));
+        this.size = new AtomicInteger();
+    }
+
+    /**
+     * Adds a user. Only an add that sets a new bit counts to the capacity, so
+     * adding a known user again doesn't fill the filter.
+     *
+     * @param username of the user
+     */
+    void add(String username) {
+        boolean changed = false;
+        long hash = UsernameFilter.hash(username);
+        long mask = this.bitCount - 1;
+        for (int i = 0; i < UsernameFilter.HASHES; i++) {
+            long bit = (hash + i * (hash >>> 32 | 1)) & mask;
+            int word = (int) (bit >>> 6);
+            long flag = 1L << bit;
+            long current = this.bits.get(word);
+            while ((current & flag) == 0) {
+                if (this.bits.compareAndSet(word, current, current | flag)) {
+                    changed = true;
+                    break;
+                }
+                current = this.bits.get(word);
+            }
+        }
+        if (changed) {
+            this.size.incrementAndGet();
+        }
+    }
+
+    /**
+     *
+     * @param username of the user
+     * @return false if the user is surely unknown, true if it may be known.
+     */
+    boolean mightContain(String username) {
+        long hash = UsernameFilter.hash(username);
+        long mask = this.bitCount - 1;
+        for (int i = 0; i < UsernameFilter.HASHES; i++) {
+            long bit = (hash + i * (hash >>> 32 | 1)) & mask;
+            if ((this.bits.get((int) (bit >>> 6)) & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @return true if more users than the capacity were added.
+     */
+    boolean isFull() {
+        return this.size.get() > this.capacity;
+    }
+
+    int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     *
+     * @return two independent 32 bits hashes of the username, for double
+     * hashing.
+     */
+    private static long hash(String username) {
+        long hash = username.hashCode() * 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < username.length(); i++) {
+            hash = (hash ^ username.charAt(i)) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        return hash ^ hash >>> 32;
+    }
+}
@@ -0,0 +1,239 @@
+package Server.Util.Protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the binary frames written by a FrameWriter. Every frame is copied to a
+ * buffer reused by the next frames, and its fields are read in the order they
+ * were written.
+ *
+ * @see FrameWriter
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+public class FrameReader {
+
+    public static final int MAX_FRAME_LENGTH = 1 << 20; //Bigger frames are refused.
+
+    private final InputStream input;
+    private byte[] buffer; //Current frame, without the length.
+    private int position; //Next field of the current frame.
+    private int limit; //End of the current frame.
+    private int requestId; //Request id of the current frame.
+    private char[] chars; //Decoded string characters.
+
+    /**
+     *
+     * @param input stream to read from, null if the frames are given through
+     * next(ByteBuffer)
+     */
+    public FrameReader(InputStream input) {
+        this.input = input;
+        this.buffer = new byte[256];
+        this.chars = new char[64];
+    }
+
+    /**
+     * Reads the next frame from the stream, waiting for it if necessary.
+     *
+     * @return the frame's operation code
+     * @throws EOFException if the stream ended
+     * @throws IOException
+     */
+    public int next() throws IOException {
+        this.readFully(4);
+        int length = ((this.buffer[0] & 0xFF) << 24) | ((this.buffer[1] & 0xFF) << 16)
+                | ((this.buffer[2] & 0xFF) << 8) | (this.buffer[3] & 0xFF);
+        this.ensureCapacity(FrameReader.checkLength(length));
+        this.readFully(length);
+        this.position = 0;
+        this.limit = length;
+        this.getByte();
+        this.requestId = this.getInt();
+        return this.getOpcode();
+    }
+
+    /**
+     * Takes the next frame of the given bytes, if it was completely received.
+     *
+     * @param inbound received bytes, ready to be read
+     * @return true if a frame was taken, false if the bytes don't have a whole
+     * frame yet.
+     * @throws IOException if the frame length is invalid
+     */
+    public boolean next(ByteBuffer inbound) throws IOException {
+        if (inbound.remaining() < 4) {
+            return false;
+        }
+        int length = FrameReader.checkLength(inbound.getInt(inbound.position()));
+        if (inbound.remaining() < 4 + length) {
+            return false;
+        }
+        this.ensureCapacity(length);
+        ((Buffer) inbound).position(inbound.position() + 4); //Buffer's method, also found by a Java 8 runtime
+        inbound.get(this.buffer, 0, length);
+        this.position = 0;
+        this.limit = length;
+        this.getByte();
+        this.requestId = this.getInt();
+        return true;
+    }
+
+    /**
+     *
+     * @return the operation code of the current frame.
+     */
+    public int getOpcode() {
+        return this.buffer[0] & 0xFF;
+    }
+
+    /**
+     *
+     * @return the request id of the current frame.
+     */
+    public int getRequestId() {
+        return this.requestId;
+    }
+
+    /**
+     * Copies the current frame, so it can be read after the next frames.
+     *
+     * @return a reader of the copy, at the same field of this reader
+     */
+    public FrameReader detach() {
+        FrameReader copy = new FrameReader(null);
+        copy.buffer = new byte[this.limit];
+        System.arraycopy(this.buffer, 0, copy.buffer, 0, this.limit);
+        copy.position = this.position;
+        copy.limit = this.limit;
+        copy.requestId = this.requestId;
+        return copy;
+    }
+
+    /**
+     * Goes back to the first field of the current frame, so it can be read
+     * again.
+     */
+    public void rewind() {
+        this.position = 5; //After the opcode and the request id
+    }
+
+    /**
+     *
+     * @return true if the current frame has fields not read yet.
+     */
+    public boolean hasRemaining() {
+        return this.position < this.limit;
+    }
+
+    /**
+     * Checks, without blocking, if more bytes were received from the stream.
+     *
+     * @return true if the next frame is (at least partially) available.
+     * @throws IOException
+     */
+    public boolean available() throws IOException {
+        return this.input.available() > 0;
+    }
+
+    public int getInt() throws IOException {
+        this.require(4);
+        int value = ((this.buffer[this.position] & 0xFF) << 24) | ((this.buffer[this.position + 1] & 0xFF) << 16)
+                | ((this.buffer[this.position + 2] & 0xFF) << 8) | (this.buffer[this.position + 3] & 0xFF);
+        this.position += 4;
+        return value;
+    }
+
+    public boolean getBoolean() throws IOException {
+        return this.getByte() != 0;
+    }
+
+    public char getChar() throws IOException {
+        this.require(2);
+        char value = (char) (((this.buffer[this.position] & 0xFF) << 8) | (this.buffer[this.position + 1] & 0xFF));
+        this.position += 2;
+        return value;
+    }
+
+    /**
+     * Reads a string written by FrameWriter.putString.
+     *
+     * @return the string
+     * @throws IOException if the string is malformed
+     */
+    public String getString() throws IOException {
+        this.require(2);
+        int encoded = ((this.buffer[this.position] & 0xFF) << 8) | (this.buffer[this.position + 1] & 0xFF);
+        this.position += 2;
+        this.require(encoded);
+        if (this.chars.length < encoded) {
+            this.chars = new char[encoded];
+        }
+        int end = this.position + encoded;
+        int length = 0;
+        while (this.position < end) {
+            int b = this.buffer[this.position++] & 0xFF;
+            if (b < 0x80) {
+                this.chars[length++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0 && this.position < end) {
+                this.chars[length++] = (char) (((b & 0x1F) << 6) | (this.buffer[this.position++] & 0x3F));
+            } else if ((b & 0xF0) == 0xE0 && this.position + 1 < end) {
+                this.chars[length++] = (char) (((b & 0x0F) << 12) | ((this.buffer[this.position] & 0x3F) << 6)
+                        | (this.buffer[this.position + 1] & 0x3F));
+                this.position += 2;
+            } else {
+                throw new UTFDataFormatException("Malformed string in frame " + this.getOpcode());
+            }
+        }
+        return new String(this.chars, 0, length);
+    }
+
+    /**
+     * Closes the stream.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        this.input.close();
+    }
+
+    private int getByte() throws IOException {
+        this.require(1);
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    private void require(int bytes) throws IOException {
+        if (this.position + bytes > this.limit) {
+            throw new EOFException("Frame " + this.getOpcode() + " is shorter than expected");
+        }
+    }
+
+    private void readFully(int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count = this.input.read(this.buffer, read, length - read);
+            if (count == -1) {
+                throw new EOFException("Connection closed");
+            }
+            read += count;
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (this.buffer.length < length) {
+            this.buffer = new byte[Math.max(this.buffer.length * 2, length)];
+        }
+    }
+
+    private static int checkLength(int length) throws IOException {
+        if (length < 5 || length > MAX_FRAME_LENGTH) { //Opcode and request id at least
+            throw new IOException("Invalid frame length: " + length);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,173 @@
+package Server.Util.Protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes binary frames: a 4 bytes length, the operation code (1 byte), the
+ * request id (4 bytes) and the typed fields of the message. The frame is built
+ * in a buffer reused by every message and written to the stream at once.
+ * An answer carries the id of its request, so many requests can be sent
+ * before the first answer arrives.
+ *
+ * @see FrameReader
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+public class FrameWriter {
+
+    private final OutputStream output;
+    private byte[] buffer; //Frame being built.
+    private int position; //End of the frame being built.
+
+    public FrameWriter(OutputStream output) {
+        this.output = output;
+        this.buffer = new byte[256];
+    }
+
+    /**
+     * Starts a new frame.
+     *
+     * @param opcode operation code, given in the Protocol class
+     * @param requestId id of the request, or of the request being answered
+     * @return this writer
+     */
+    public FrameWriter begin(int opcode, int requestId) {
+        this.position = 4; //Space for the length
+        this.buffer[this.position++] = (byte) opcode;
+        return this.putInt(requestId);
+    }
+
+    public FrameWriter putInt(int value) {
+        this.ensureCapacity(4);
+        this.buffer[this.position++] = (byte) (value >>> 24);
+        this.buffer[this.position++] = (byte) (value >>> 16);
+        this.buffer[this.position++] = (byte) (value >>> 8);
+        this.buffer[this.position++] = (byte) value;
+        return this;
+    }
+
+    public FrameWriter putBoolean(boolean value) {
+        this.ensureCapacity(1);
+        this.buffer[this.position++] = (byte) (value ? 1 : 0);
+        return this;
+    }
+
+    public FrameWriter putChar(char value) {
+        this.ensureCapacity(2);
+        this.buffer[this.position++] = (byte) (value >>> 8);
+        this.buffer[this.position++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * Puts a string as a 2 bytes length followed by its modified UTF-8 bytes
+     * (the same encoding of DataOutput.writeUTF).
+     *
+     * @param value string with at most 65535 encoded bytes
+     * @return this writer
+     * @throws IllegalArgumentException if the string is too long
+     */
+    public FrameWriter putString(String value) {
+        int length = value.length();
+        this.ensureCapacity(2 + length * 3);
+        int start = this.position;
+        this.position += 2;
+        for (int i = 0; i < length; i++) {
+            char ch = value.charAt(i);
+            if (ch != 0 && ch < 0x80) {
+                this.buffer[this.position++] = (byte) ch;
+            } else if (ch < 0x800) {
+                this.buffer[this.position++] = (byte) (0xC0 | (ch >> 6));
+                this.buffer[this.position++] = (byte) (0x80 | (ch & 0x3F));
+            } else {
+                this.buffer[this.position++] = (byte) (0xE0 | (ch >> 12));
+                this.buffer[this.position++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                this.buffer[this.position++] = (byte) (0x80 | (ch & 0x3F));
+            }
+        }
+        int encoded = this.position - start - 2;
+        if (encoded > 0xFFFF) {
+            throw new IllegalArgumentException("String too long: " + encoded + " bytes");
+        }
+        this.buffer[start] = (byte) (encoded >>> 8);
+        this.buffer[start + 1] = (byte) encoded;
+        return this;
+    }
+
+    /**
+     * Puts fields encoded by another writer.
+     *
+     * @param fields bytes given by getFields
+     * @return this writer
+     */
+    public FrameWriter putFields(byte[] fields) {
+        this.ensureCapacity(fields.length);
+        System.arraycopy(fields, 0, this.buffer, this.position, fields.length);
+        this.position += fields.length;
+        return this;
+    }
+
+    /**
+     * Gets the fields of the frame being built, so they can be encoded once
+     * and put in many frames.
+     *
+     * @return the encoded fields, without the frame's header.
+     */
+    public byte[] getFields() {
+        byte[] fields = new byte[this.position - 9];
+        System.arraycopy(this.buffer, 9, fields, 0, fields.length);
+        return fields;
+    }
+
+    /**
+     * Writes the frame to the stream, without flushing it. Used to send many
+     * frames together.
+     *
+     * @throws IOException
+     */
+    public void end() throws IOException {
+        int length = this.position - 4;
+        this.buffer[0] = (byte) (length >>> 24);
+        this.buffer[1] = (byte) (length >>> 16);
+        this.buffer[2] = (byte) (length >>> 8);
+        this.buffer[3] = (byte) length;
+        this.output.write(this.buffer, 0, this.position);
+    }
+
+    /**
+     * Writes the frame to the stream and flushes it.
+     *
+     * @throws IOException
+     */
+    public void send() throws IOException {
+        this.end();
+        this.flush();
+    }
+
+    /**
+     * Flushes the frames written by end.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        this.output.flush();
+    }
+
+    /**
+     * Closes the stream.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        this.output.close();
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (this.position + bytes > this.buffer.length) {
+            byte[] bigger = new byte[Math.max(this.buffer.length * 2, this.position + bytes)];
+            System.arraycopy(this.buffer, 0, bigger, 0, this.position);
+            this.buffer = bigger;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package Server.Util.WordManager;
+
+import Server.Util.Exceptions.DatabaseParsingException;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Dataset file accessed through a memory mapping. A companion index file
+ * (dataset + ".idx") keeps the offset of every entry, so the entry N is read
+ * without scanning the file and only the chosen entries become WordTuples.
+ * The index is built on the first use and rebuilt when the dataset changes.
+ *
+ * Index format: magic, version, dataset length, dataset last modified time,
+ * amount of entries N, then N + 1 offsets (the last one is the end of the
+ * last entry).
+ *
+ * @see WordDictionary
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+class MappedDataset {
+
+    private static final int MAGIC = 0x52494458; //"RIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+
+    private final String datasetFile;
+    private final MappedByteBuffer data; //Dataset's bytes.
+    private final IntBuffer offsets; //Entries' offsets, mapped from the index.
+    private final int size; //Amount of entries.
+
+    /**
+     * Maps the dataset and its index, building the index if necessary.
+     *
+     * @param datasetFile location of the dataset, "word - tip" lines in UTF-8
+     * @throws DatabaseParsingException if the files can't be read or mapped.
+     */
+    MappedDataset(String datasetFile) throws DatabaseParsingException {
+        this.datasetFile = datasetFile;
+        File dataset = new File(datasetFile);
+        File index = new File(datasetFile + ".idx");
+        try (RandomAccessFile dataFile = new RandomAccessFile(dataset, "r")) {
+            if (dataFile.length() > Integer.MAX_VALUE) {
+                throw new DatabaseParsingException(datasetFile);
+            }
+            this.data = dataFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, dataFile.length());
+
+            if (!MappedDataset.isIndexOf(index, dataset)) {
+                this.buildIndex(index, dataset);
+            }
+            try (RandomAccessFile indexFile = new RandomAccessFile(index, "r")) {
+                ByteBuffer mappedIndex = indexFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, indexFile.length());
+                this.size = mappedIndex.getInt(24);
+                ((Buffer) mappedIndex).position(HEADER_SIZE); //Buffer's method, ByteBuffer's override is Java 9+
+                this.offsets = mappedIndex.slice().asIntBuffer();
+            }
+        } catch (IOException ex) {
+            throw new DatabaseParsingException(datasetFile);
+        }
+        if (this.size == 0 || this.offsets.capacity() < this.size + 1) {
+            throw new DatabaseParsingException(datasetFile);
+        }
+    }
+
+    /**
+     * Checks if the index file exists and was built from the current dataset.
+     */
+    private static boolean isIndexOf(File index, File dataset) throws IOException {
+        if (!index.isFile() || index.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (RandomAccessFile indexFile = new RandomAccessFile(index, "r")) {
+            return indexFile.readInt() == MAGIC && indexFile.readInt() == VERSION
+                    && indexFile.readLong() == dataset.length()
+                    && indexFile.readLong() == dataset.lastModified();
+        }
+    }
+
+    /**
+     * Scans the mapped dataset once and writes the offset of every non empty
+     * line. The index is written to a temporary file and then renamed.
+     */
+    private void buildIndex(File index, File dataset) throws IOException {
+        File temporary = new File(index.getPath() + ".tmp");
+        int length = this.data.capacity();
+        try (RandomAccessFile output = new RandomAccessFile(temporary, "rw")) {
+            output.setLength(0);
+            DataOutputStream offsetsOutput = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(output.getFD())));
+            offsetsOutput.writeInt(MAGIC);
+            offsetsOutput.writeInt(VERSION);
+            offsetsOutput.writeLong(dataset.length());
+            offsetsOutput.writeLong(dataset.lastModified());
+            offsetsOutput.writeInt(0); //Amount of entries, written at the end
+
+            int entries = 0;
+            int lineStart = 0;
+            for (int i = 0; i <= length; i++) {
+                if (i == length || this.data.get(i) == '\n') {
+                    if (this.lineEnd(lineStart, i) > lineStart) { //Empty lines aren't entries
+                        offsetsOutput.writeInt(lineStart);
+                        entries++;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            offsetsOutput.writeInt(length);
+            offsetsOutput.flush();
+            output.seek(24);
+            output.writeInt(entries);
+        }
+        Files.move(temporary.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * End of a line without its line break characters.
+     */
+    private int lineEnd(int start, int end) {
+        while (end > start && (this.data.get(end - 1) == '\n' || this.data.get(end - 1) == '\r')) {
+            end--;
+        }
+        return end;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Decodes the entry N. Only absolute reads are used, so many threads can
+     * read the mapping at the same time.
+     *
+     * @param index entry's index, between 0 and size() - 1
+     * @return the entry
+     * @throws DatabaseParsingException if the entry isn't a "word - tip" line
+     */
+    WordTuple get(int index) throws DatabaseParsingException {
+        int start = this.offsets.get(index);
+        int end = this.lineEnd(start, this.offsets.get(index + 1));
+        byte[] line = new byte[end - start];
+        for (int i = 0; i < line.length; i++) {
+            line[i] = this.data.get(start + i);
+        }
+        try {
+            return new WordTuple(new String(line, StandardCharsets.UTF_8));
+        } catch (RuntimeException ex) {
+            throw new DatabaseParsingException(this.datasetFile);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package Server.Util.WordManager;
+
+import Server.Util.Exceptions.DatabaseParsingException;
+import Server.Util.Exceptions.PropertiesFileNotFoundException;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * All the entries of the dataset, loaded once and shared by every
+ * WordManager. The entries never change after the load, so any thread can
+ * read them without synchronization. With datasetMode=mapped, the dataset is
+ * memory-mapped instead of kept as Strings in the heap (see MappedDataset).
+ *
+ * @see WordManager
+ * @author Allen Hichard
+ * @author Daniel Andrade
+ */
+public class WordDictionary {
+
+    public static final String MEMORY_MODE = "memory"; //Entries loaded to the heap.
+    public static final String MAPPED_MODE = "mapped"; //Entries decoded from a mapped file.
+
+    private static WordDictionary instance; //Loaded dictionary.
+
+    private final WordTuple[] tuples; //Dataset's entries, null in mapped mode.
+    private final MappedDataset mapped; //Mapped dataset, null in memory mode.
+    private final int cacheSize; //Amount of words each WordManager keeps.
+    private final int cacheLowWatermark; //Cached words that trigger a refill.
+    private final int cacheRefillBatch; //Amount of words of each refill.
+
+    /**
+     * Reads the whole dataset file, or maps it.
+     *
+     * @param properties dataset properties
+     * @throws DatabaseParsingException if there's a error while parsing the dataset.
+     */
+    private WordDictionary(Properties properties) throws DatabaseParsingException {
+        String databaseFile = properties.getProperty("datasetLocation");
+        this.cacheSize = Integer.parseInt(properties.getProperty("cacheSize"));
+        this.cacheLowWatermark = Integer.parseInt(properties.getProperty("cacheLowWatermark", "1"));
+        this.cacheRefillBatch = Integer.parseInt(properties.getProperty("cacheRefillBatch", "" + this.cacheSize));
+
+        if (MAPPED_MODE.equals(properties.getProperty("datasetMode", MEMORY_MODE))) {
+            this.mapped = new MappedDataset(databaseFile);
+            this.tuples = null;
+        } else {
+            this.mapped = null;
+            this.tuples = WordDictionary.load(databaseFile, Integer.parseInt(properties.getProperty("datasetSize", "16")));
+        }
+    }
+
+    /**
+     * Reads all the entries of the dataset.
+     *
+     * @param databaseFile location of the dataset
+     * @param expectedSize amount of entries expected
+     * @return the entries
+     * @throws DatabaseParsingException if there's a error while parsing the dataset.
+     */
+    private static WordTuple[] load(String databaseFile, int expectedSize) throws DatabaseParsingException {
+        List<WordTuple> entries = new ArrayList<>(expectedSize);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(databaseFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    entries.add(new WordTuple(line));
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            throw new DatabaseParsingException(databaseFile);
+        }
+        if (entries.isEmpty()) {
+            throw new DatabaseParsingException(databaseFile);
+        }
+        return entries.toArray(new WordTuple[entries.size()]);
+    }
+
+    /**
+     * Returns the dictionary, loading dataset.properties and the dataset file
+     * on the first call.
+     *
+     * @return the shared dictionary
+     * @throws PropertiesFileNotFoundException if the properties file was not
+     * found
+     * @throws DatabaseParsingException if there's a error while parsing the dataset.
+     */
+    public static synchronized WordDictionary instance() throws PropertiesFileNotFoundException, DatabaseParsingException {
+        if (WordDictionary.instance == null) {
+            Properties properties = new Properties();
+            try (FileInputStream file = new FileInputStream("dataset.properties")) {
+                properties.load(file);
+            } catch (IOException ex) {
+                throw new PropertiesFileNotFoundException();
+            }
+            WordDictionary.instance = new WordDictionary(properties);
+        }
+        return WordDictionary.instance;
+    }
+
+    /**
+     *
+     * @return amount of entries.
+     */
+    public int size() {
+        return this.tuples != null ? this.tuples.length : this.mapped.size();
+    }
+
+    /**
+     *
+     * @param index entry's index, between 0 and size() - 1
+     * @return the entry
+     * @throws DatabaseParsingException if a mapped entry can't be decoded
+     */
+    public WordTuple get(int index) throws DatabaseParsingException {
+        return this.tuples != null ? this.tuples[index] : this.mapped.get(index);
+    }
+
+    /**
+     *
+     * @return amount of words each WordManager keeps in its cache.
+     */
+    public int getCacheSize() {
+        return this.cacheSize;
+    }
+
+    /**
+     *
+     * @return amount of cached words that starts a background refill.
+     */
+    public int getCacheLowWatermark() {
+        return this.cacheLowWatermark;
+    }
+
+    /**
+     *
+     * @return amount of words added by each refill.
+     */
+    public int getCacheRefillBatch() {
+        return this.cacheRefillBatch;
+    }
+}
@@ -2,99 +2,115 @@ package Server.Util.WordManager;
 
 import Server.Util.Exceptions.DatabaseParsingException;
 import Server.Util.Exceptions.PropertiesFileNotFoundException;
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Properties;
-import java.util.Random;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Class responsible to manage the databaseFile.
+ * Class responsible to manage the databaseFile. The entries are sampled from
+ * the shared WordDictionary, so no file is read after the server's start.
+ * When the cache gets down to the low watermark, it's refilled by a
+ * background thread, so getTuple doesn't wait for the dataset.
  *
  * @see WordTuple
+ * @see WordDictionary
  * @author Allen Hichard
  * @author Daniel Andrade
  */
 public class WordManager {
 
-    private final String databaseFile; //File containing all words and tips in the format "word - tip"
-    private final int cacheSize; //Amount of words to keep in ram.
-    private final int datasetNumberOfWords; //Dataset's size.
-    private final List<WordTuple> cache; //Tuple's cache.
+    //Thread shared by all managers to refill their caches.
+    private static final ExecutorService REFILLER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread refiller = new Thread(task, "word-cache-refiller");
+            refiller.setDaemon(true);
+            return refiller;
+        }
+    });
+
+    private final WordDictionary dictionary; //All the dataset's entries.
+    private final int lowWatermark; //Cached entries that trigger a refill.
+    private final int refillBatch; //Entries added by each refill.
+    private final Queue<WordTuple> cache; //Tuple's cache.
+    private final AtomicInteger cached; //Amount of entries in the cache.
+    private final AtomicBoolean refilling; //True while a refill is scheduled.
 
     /**
-     * Loads the databaseFile properties.
+     * Gets the shared dictionary, loading it if it's the first manager, and
+     * fills the cache with the first entries.
      *
      * @throws PropertiesFileNotFoundException if the properties file was not
      * found
+     * @throws DatabaseParsingException if there's a error while parsing the dataset.
      */
-    public WordManager() throws PropertiesFileNotFoundException {
-        Properties properties = new Properties();
-        try {
-            properties.load(new FileInputStream("dataset.properties"));
-        } catch (IOException ex) {
-            throw new PropertiesFileNotFoundException();
-        }
-        this.cacheSize = Integer.parseInt(properties.getProperty("cacheSize"));
-        this.datasetNumberOfWords = Integer.parseInt(properties.getProperty("datasetSize"));
-        this.databaseFile = properties.getProperty("datasetLocation");
-        this.cache = new ArrayList<>();
+    public WordManager() throws PropertiesFileNotFoundException, DatabaseParsingException {
+        this.dictionary = WordDictionary.instance();
+        this.lowWatermark = this.dictionary.getCacheLowWatermark();
+        this.refillBatch = Math.max(1, this.dictionary.getCacheRefillBatch());
+        this.cache = new ConcurrentLinkedQueue<>();
+        this.cached = new AtomicInteger();
+        this.refilling = new AtomicBoolean();
+        this.fillCache(Math.max(1, this.dictionary.getCacheSize()));
     }
 
     /**
-     * Reads the databaseFile and load 'this.cacheSize' entries to the cache.
+     * Load random entries of the dictionary to the cache.
      *
-     * @throws DatabaseParsingException if there's a error while parsing the dataset.
+     * @param amount of entries
+     * @throws DatabaseParsingException if an entry can't be decoded.
      */
-    private void fillCache() throws DatabaseParsingException {
-        try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.databaseFile)));
-            Random random = new Random();
-            List<Integer> numbers = new ArrayList<>();
-
-            for (int i = 0; i < this.cacheSize; i++) {
-                numbers.add(random.nextInt(this.datasetNumberOfWords));
-            }
-
-            Collections.sort(numbers);
-
-            String line;
-            Iterator<Integer> numberIterator = numbers.iterator();
-            int number = numberIterator.next();
+    private void fillCache(int amount) throws DatabaseParsingException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < amount; i++) {
+            this.cache.add(this.dictionary.get(random.nextInt(this.dictionary.size())));
+            this.cached.incrementAndGet();
+        }
+    }
 
-            for (int i = 0; (line = reader.readLine()) != null; i++) {
-                if (i == number) {
-                    if (numberIterator.hasNext()) {
-                        number = numberIterator.next();
-                        this.cache.add(new WordTuple(line));
-                    } else {
-                        break;
+    /**
+     * Schedules a background refill, unless one is already scheduled.
+     */
+    private void refillCache() {
+        if (this.refilling.compareAndSet(false, true)) {
+            WordManager.REFILLER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WordManager.this.fillCache(WordManager.this.refillBatch);
+                    } catch (DatabaseParsingException ex) {
+                        System.err.println("ERROR: " + ex);
+                    } finally {
+                        WordManager.this.refilling.set(false);
                     }
                 }
-            }
-        } catch (IOException ex) {
-            throw new DatabaseParsingException(this.databaseFile);
+            });
         }
     }
 
     /**
-     * Get a databaseFile entry
+     * Get a databaseFile entry. Only if the background refill didn't keep up,
+     * the cache is filled by the caller.
      *
      * @return a WordTuple containg a word and the correspondent tip.
      * @throws DatabaseParsingException
      */
     public WordTuple getTuple() throws DatabaseParsingException {
-        if (this.cache.isEmpty()) {
-            this.fillCache();
+        WordTuple tuple;
+        while ((tuple = this.cache.poll()) == null) {
+            this.fillCache(this.refillBatch);
         }
 
-        Random random = new Random();
-        return this.cache.remove(random.nextInt(this.cache.size()));
+        if (this.cached.decrementAndGet() <= this.lowWatermark) {
+            this.refillCache();
+        }
+        return tuple;
     }
 
     public static void main(String[] args) throws IOException {